@@ -0,0 +1,378 @@
+package com.mathhulk.spectra;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.command.BlockCommandSender;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+/**
+ * The declared arguments of a script command, such as
+ * <code>[{ name: "target", type: "player" }, { name: "amount", type: "integer", optional: true }]</code>.
+ *
+ * Arguments are parsed and validated before the script is called, which
+ * receives the resolved values by name. The last argument may be varargs, and
+ * optional arguments may only be followed by other optional arguments.
+ */
+public class ArgumentSchema {
+  private static final Set<String> TYPES = Set.of("string", "integer", "number", "boolean", "enum", "duration",
+      "player", "world", "location");
+
+  private static final Pattern DURATION_PATTERN = Pattern.compile("(\\d+)(ms|s|m|h|d|w)");
+
+  private final List<Argument> arguments;
+
+  private record Argument(String name, String type, Boolean optional, Boolean varargs, List<String> values,
+      Double min, Double max) {
+  }
+
+  /**
+   * Thrown when the arguments of a command do not match its schema
+   */
+  public static class ArgumentException extends Exception {
+    public ArgumentException(String message) {
+      super(message);
+    }
+  }
+
+  private ArgumentSchema(List<Argument> arguments) {
+    this.arguments = arguments;
+  }
+
+  public static ArgumentSchema parse(Value schema) {
+    if (!schema.hasArrayElements()) {
+      throw new IllegalArgumentException("Expected an array of arguments");
+    }
+
+    List<Argument> arguments = new ArrayList<>();
+
+    for (long i = 0; i < schema.getArraySize(); i++) {
+      Value argument = schema.getArrayElement(i);
+
+      String name = argument.getMember("name").asString();
+      String type = getString(argument, "type", "string");
+
+      if (!TYPES.contains(type)) {
+        throw new IllegalArgumentException("Unknown type " + type + " for argument " + name);
+      }
+
+      Boolean optional = getBoolean(argument, "optional");
+      Boolean varargs = getBoolean(argument, "varargs");
+
+      if (varargs && i != schema.getArraySize() - 1) {
+        throw new IllegalArgumentException("Expected varargs argument " + name + " to be the last argument");
+      }
+
+      if (!optional && !arguments.isEmpty() && arguments.getLast().optional()) {
+        throw new IllegalArgumentException("Expected required argument " + name + " before optional arguments");
+      }
+
+      List<String> values = new ArrayList<>();
+      Value enumValues = argument.getMember("values");
+
+      if (enumValues != null && enumValues.hasArrayElements()) {
+        for (long j = 0; j < enumValues.getArraySize(); j++) {
+          values.add(enumValues.getArrayElement(j).asString());
+        }
+      }
+
+      if (type.equals("enum") && values.isEmpty()) {
+        throw new IllegalArgumentException("Expected values for enum argument " + name);
+      }
+
+      arguments.add(new Argument(name, type, optional, varargs, List.copyOf(values), getDouble(argument, "min"),
+          getDouble(argument, "max")));
+    }
+
+    return new ArgumentSchema(List.copyOf(arguments));
+  }
+
+  private static String getString(Value value, String key, String defaultValue) {
+    Value member = value.getMember(key);
+
+    return member == null || member.isNull() ? defaultValue : member.asString();
+  }
+
+  private static Boolean getBoolean(Value value, String key) {
+    Value member = value.getMember(key);
+
+    return member != null && !member.isNull() && member.asBoolean();
+  }
+
+  private static Double getDouble(Value value, String key) {
+    Value member = value.getMember(key);
+
+    return member == null || member.isNull() ? null : member.asDouble();
+  }
+
+  public String getUsage(String command) {
+    StringBuilder usage = new StringBuilder("/" + command);
+
+    for (Argument argument : arguments) {
+      String name = argument.name() + (argument.varargs() ? "..." : "");
+
+      usage.append(argument.optional() ? " [" + name + "]" : " <" + name + ">");
+    }
+
+    return usage.toString();
+  }
+
+  /**
+   * Resolves the arguments of a command into values by name
+   */
+  public ProxyObject resolve(CommandSender sender, String[] args) throws ArgumentException {
+    Map<String, Object> values = new LinkedHashMap<>();
+
+    int index = 0;
+
+    for (Argument argument : arguments) {
+      int width = argument.type().equals("location") ? 3 : 1;
+
+      if (argument.varargs()) {
+        List<Object> rest = new ArrayList<>();
+
+        while (index + width <= args.length) {
+          rest.add(resolve(sender, argument, args, index));
+          index += width;
+        }
+
+        if (rest.isEmpty() && !argument.optional()) {
+          throw new ArgumentException("Missing argument: " + argument.name());
+        }
+
+        values.put(argument.name(), ProxyArray.fromList(rest));
+        continue;
+      }
+
+      if (index + width > args.length) {
+        if (!argument.optional()) {
+          throw new ArgumentException("Missing argument: " + argument.name());
+        }
+
+        values.put(argument.name(), null);
+        continue;
+      }
+
+      values.put(argument.name(), resolve(sender, argument, args, index));
+      index += width;
+    }
+
+    if (index < args.length) {
+      throw new ArgumentException("Too many arguments");
+    }
+
+    return ProxyObject.fromMap(values);
+  }
+
+  private static Object resolve(CommandSender sender, Argument argument, String[] args, int index)
+      throws ArgumentException {
+    String token = args[index];
+
+    switch (argument.type()) {
+      case "integer" -> {
+        try {
+          long value = Long.parseLong(token);
+          checkRange(argument, value);
+
+          return value;
+        } catch (NumberFormatException e) {
+          throw new ArgumentException("Expected an integer for " + argument.name() + " but found " + token);
+        }
+      }
+      case "number" -> {
+        try {
+          double value = Double.parseDouble(token);
+          checkRange(argument, value);
+
+          return value;
+        } catch (NumberFormatException e) {
+          throw new ArgumentException("Expected a number for " + argument.name() + " but found " + token);
+        }
+      }
+      case "boolean" -> {
+        if (List.of("true", "yes", "on").contains(token.toLowerCase()))
+          return true;
+
+        if (List.of("false", "no", "off").contains(token.toLowerCase()))
+          return false;
+
+        throw new ArgumentException("Expected true or false for " + argument.name() + " but found " + token);
+      }
+      case "enum" -> {
+        for (String value : argument.values()) {
+          if (value.equalsIgnoreCase(token))
+            return value;
+        }
+
+        throw new ArgumentException("Expected one of " + String.join(", ", argument.values()) + " for "
+            + argument.name() + " but found " + token);
+      }
+      case "duration" -> {
+        return parseDuration(argument, token);
+      }
+      case "player" -> {
+        Player player = Bukkit.getPlayerExact(token);
+
+        if (player == null) {
+          throw new ArgumentException("Player not found: " + token);
+        }
+
+        return player;
+      }
+      case "world" -> {
+        World world = Bukkit.getWorld(token);
+
+        if (world == null) {
+          throw new ArgumentException("World not found: " + token);
+        }
+
+        return world;
+      }
+      case "location" -> {
+        return parseLocation(sender, argument, args, index);
+      }
+      default -> {
+        if (!argument.values().isEmpty() && !argument.values().contains(token)) {
+          throw new ArgumentException("Expected one of " + String.join(", ", argument.values()) + " for "
+              + argument.name() + " but found " + token);
+        }
+
+        return token;
+      }
+    }
+  }
+
+  private static void checkRange(Argument argument, double value) throws ArgumentException {
+    if (argument.min() != null && value < argument.min()) {
+      throw new ArgumentException("Expected " + argument.name() + " to be at least " + argument.min());
+    }
+
+    if (argument.max() != null && value > argument.max()) {
+      throw new ArgumentException("Expected " + argument.name() + " to be at most " + argument.max());
+    }
+  }
+
+  /**
+   * Parses durations such as <code>1h30m</code> into milliseconds
+   */
+  private static long parseDuration(Argument argument, String token) throws ArgumentException {
+    Matcher matcher = DURATION_PATTERN.matcher(token.toLowerCase());
+
+    long milliseconds = 0;
+    int end = 0;
+
+    while (matcher.find() && matcher.start() == end) {
+      long unit = switch (matcher.group(2)) {
+        case "ms" -> 1;
+        case "s" -> 1000;
+        case "m" -> 60_000;
+        case "h" -> 3_600_000;
+        case "d" -> 86_400_000;
+        default -> 604_800_000;
+      };
+
+      try {
+        milliseconds = Math.addExact(milliseconds, Math.multiplyExact(Long.parseLong(matcher.group(1)), unit));
+      } catch (NumberFormatException | ArithmeticException e) {
+        throw new ArgumentException("Duration for " + argument.name() + " is too long: " + token);
+      }
+
+      end = matcher.end();
+    }
+
+    if (end == 0 || end != token.length()) {
+      throw new ArgumentException("Expected a duration such as 1h30m for " + argument.name() + " but found " + token);
+    }
+
+    checkRange(argument, milliseconds);
+
+    return milliseconds;
+  }
+
+  /**
+   * Parses three coordinates, which may be relative to the sender with
+   * <code>~</code>
+   */
+  private static Location parseLocation(CommandSender sender, Argument argument, String[] args, int index)
+      throws ArgumentException {
+    Location origin = null;
+
+    if (sender instanceof Entity entity) {
+      origin = entity.getLocation();
+    } else if (sender instanceof BlockCommandSender blockSender) {
+      origin = blockSender.getBlock().getLocation();
+    }
+
+    double[] coordinates = new double[3];
+
+    for (int i = 0; i < 3; i++) {
+      String token = args[index + i];
+      Boolean relative = token.startsWith("~");
+
+      if (relative && origin == null) {
+        throw new ArgumentException("Relative coordinates for " + argument.name() + " require a position");
+      }
+
+      try {
+        String offset = relative ? token.substring(1) : token;
+        double value = offset.isEmpty() ? 0 : Double.parseDouble(offset);
+
+        coordinates[i] = relative ? value + (i == 0 ? origin.getX() : i == 1 ? origin.getY() : origin.getZ())
+            : value;
+      } catch (NumberFormatException e) {
+        throw new ArgumentException("Expected a coordinate for " + argument.name() + " but found " + token);
+      }
+    }
+
+    World world = origin == null ? Bukkit.getWorlds().getFirst() : origin.getWorld();
+
+    return new Location(world, coordinates[0], coordinates[1], coordinates[2]);
+  }
+
+  /**
+   * Suggests values for the argument being typed, if its type has a known set
+   * of values
+   */
+  public List<String> complete(String[] args) {
+    int index = 0;
+
+    for (Argument argument : arguments) {
+      int width = argument.type().equals("location") ? 3 : 1;
+
+      if (args.length - 1 < index + width || argument.varargs()) {
+        String prefix = args[args.length - 1].toLowerCase();
+
+        // Other plugins may edit the completions of the tab complete event
+        return new ArrayList<>(suggest(argument).stream()
+            .filter((value) -> value.toLowerCase().startsWith(prefix)).toList());
+      }
+
+      index += width;
+    }
+
+    return new ArrayList<>();
+  }
+
+  private static List<String> suggest(Argument argument) {
+    return switch (argument.type()) {
+      case "boolean" -> List.of("true", "false");
+      case "player" -> Bukkit.getOnlinePlayers().stream().map(Player::getName).toList();
+      case "world" -> Bukkit.getWorlds().stream().map(World::getName).toList();
+      case "location" -> List.of("~");
+      default -> argument.values();
+    };
+  }
+}
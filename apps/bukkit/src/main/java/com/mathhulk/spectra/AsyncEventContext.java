@@ -0,0 +1,143 @@
+package com.mathhulk.spectra;
+
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+/**
+ * A dedicated context and worker thread for the async event listeners of a
+ * script, so they never block the main thread or enter the script's context.
+ *
+ * Async handlers are the default exports of modules next to the script, e.g.
+ * <code>addEventListener(PlayerJoinEvent, "join.mjs", { async: true, fields: [...] })</code>.
+ * They are called through the script like any other entry point, with a
+ * budget bound to this context.
+ */
+public class AsyncEventContext {
+  private static final int QUEUE_CAPACITY = Integer.getInteger("spectra.async-listener-queue", 10_000);
+
+  private final Script script;
+  private final ScriptBudget budget;
+
+  private ExecutorService executor;
+  private Context context;
+
+  public AsyncEventContext(Script script) {
+    this.script = script;
+
+    budget = new ScriptBudget(script.getName(), script.getHeader(), script.getPlugin().getLogger());
+  }
+
+  private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+          (runnable) -> {
+            Thread thread = new Thread(runnable, "Spectra Async Listener: " + script.getName());
+            thread.setDaemon(true);
+
+            return thread;
+          }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    return executor;
+  }
+
+  /**
+   * Queues loading the default export of a module as an async handler. The
+   * context is built and the module evaluated on the async thread ahead of
+   * any event, so the main thread never waits for them.
+   */
+  public Future<Value> load(File module) {
+    return getExecutor().submit(() -> {
+      try {
+        if (context == null) {
+          Context.Builder builder = Context.newBuilder(script.getLanguage())
+              .allowAllAccess(true)
+              .option("js.esm-eval-returns-exports", "true");
+
+          if (script.usesSharedEngine())
+            builder.engine(SharedEngine.getEngine());
+
+          budget.configure(builder);
+
+          context = builder.build();
+          budget.attach(context);
+        }
+
+        Value exports = context.eval(Source.newBuilder(script.getLanguage(), module)
+            .mimeType("application/javascript+module").build());
+        Value handler = exports.getMember("default");
+
+        if (handler == null || !handler.canExecute()) {
+          throw new IllegalArgumentException("Expected a function as the default export of " + module.getName());
+        }
+
+        return handler;
+      } catch (Exception e) {
+        script.getPlugin().getLogger().severe("Failed to load async listener " + module.getName()
+            + " in script: " + script.getName());
+
+        e.printStackTrace();
+
+        throw e;
+      }
+    });
+  }
+
+  /**
+   * Queues an event snapshot for a handler. Returns false if the queue is full
+   * and the event was dropped.
+   */
+  public Boolean submit(Future<Value> handler, ProxyObject snapshot, String label) {
+    try {
+      getExecutor().execute(() -> {
+        // Loading was queued first, and its failure was already logged
+        if (handler.state() != Future.State.SUCCESS)
+          return;
+
+        Value function = handler.resultNow();
+
+        try {
+          script.invoke(budget, EntryPoint.EVENT, label + " (async)", () -> function.executeVoid(snapshot));
+        } catch (Exception e) {
+          script.getPlugin().getLogger().severe("Failed to handle " + label + " asynchronously in script: "
+              + script.getName());
+
+          e.printStackTrace();
+        }
+      });
+
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  public synchronized void close() {
+    if (executor == null)
+      return;
+
+    executor.shutdownNow();
+
+    try {
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (context != null)
+      context.close(true);
+
+    executor = null;
+    context = null;
+  }
+}
@@ -0,0 +1,43 @@
+package com.mathhulk.spectra;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bukkit.event.Event;
+import org.graalvm.polyglot.Value;
+
+/**
+ * A subscription which snapshots the declared fields of each event on the main
+ * thread and handles the snapshot in the script's async context, with the
+ * default export of a module
+ */
+public class AsyncEventSubscription extends EventSubscription {
+  private final EventSnapshot snapshot;
+  private final AsyncEventContext context;
+  private final Future<Value> handler;
+
+  private final LongAdder droppedEvents = new LongAdder();
+
+  AsyncEventSubscription(Script script, Class<? extends Event> eventClass, EventListenerOptions options,
+      AsyncEventContext context, Future<Value> handler) {
+    super(script, eventClass, options, null);
+
+    this.context = context;
+    this.handler = handler;
+
+    snapshot = EventSnapshot.compile(eventClass, options.getFields());
+  }
+
+  /**
+   * Gets the number of events dropped because the async queue was full
+   */
+  public long getDroppedEvents() {
+    return droppedEvents.sum();
+  }
+
+  @Override
+  void dispatch(Event event) {
+    if (!context.submit(handler, snapshot.capture(event), label))
+      droppedEvents.increment();
+  }
+}
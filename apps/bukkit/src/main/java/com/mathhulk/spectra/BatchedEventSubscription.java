@@ -0,0 +1,209 @@
+package com.mathhulk.spectra;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bukkit.event.Event;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+/**
+ * A subscription which captures the declared fields of each event into a
+ * reused buffer, and delivers it to the script from the Spectra tick task, or
+ * as soon as it holds the configured number of events.
+ *
+ * The script receives a view of the buffer rather than a copy, so a batch and
+ * its snapshots are only valid during the callback. Async events cannot enter
+ * the script's context, so those arriving once the buffer is full are dropped
+ * until the next tick, as are events fired by the callback of a full batch.
+ */
+public class BatchedEventSubscription extends EventSubscription {
+  private static final List<BatchedEventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+  private final EventSnapshot snapshot;
+  private final Value callback;
+  private final int fieldCount;
+
+  // Events are captured into one buffer while the other is delivered
+  private Buffer filling;
+  private Buffer delivering;
+
+  // Only the main thread delivers, so a batch fired from within a batch waits for the next tick
+  private Boolean flushing = false;
+
+  private final LongAdder droppedEvents = new LongAdder();
+  private Boolean closed = false;
+
+  BatchedEventSubscription(Script script, Class<? extends Event> eventClass, EventListenerOptions options,
+      Value callback) {
+    super(script, eventClass, options, null);
+
+    this.callback = callback;
+
+    snapshot = EventSnapshot.compile(eventClass, options.getFields());
+    fieldCount = snapshot.getFields().size();
+
+    filling = new Buffer(options.getBatchSize());
+    delivering = new Buffer(options.getBatchSize());
+
+    subscriptions.add(this);
+  }
+
+  /**
+   * The captured fields of up to a batch of events, laid out event by event,
+   * with views of its rows created once
+   */
+  private class Buffer implements ProxyArray {
+    private final Object[] values;
+    private final ProxyObject[] rows;
+    private int size = 0;
+
+    private Buffer(int capacity) {
+      values = new Object[capacity * fieldCount];
+      rows = new ProxyObject[capacity];
+
+      for (int i = 0; i < capacity; i++) {
+        rows[i] = snapshot.view(values, i * fieldCount);
+      }
+    }
+
+    private Boolean isFull() {
+      return size == rows.length;
+    }
+
+    private void add(Event event) {
+      snapshot.captureInto(event, values, size * fieldCount);
+      size++;
+    }
+
+    private void clear() {
+      Arrays.fill(values, 0, size * fieldCount, null);
+      size = 0;
+    }
+
+    @Override
+    public Object get(long index) {
+      if (index < 0 || index >= size)
+        throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for batch of " + size);
+
+      return rows[(int) index];
+    }
+
+    @Override
+    public void set(long index, Value value) {
+      throw new UnsupportedOperationException("Event batches are read-only");
+    }
+
+    @Override
+    public long getSize() {
+      return size;
+    }
+  }
+
+  /**
+   * Gets the number of events dropped because the buffer was full and could
+   * not be delivered
+   */
+  public long getDroppedEvents() {
+    return droppedEvents.sum();
+  }
+
+  @Override
+  void dispatch(Event event) {
+    Boolean async = event.isAsynchronous();
+    Boolean deferred = false;
+
+    synchronized (this) {
+      if (closed)
+        return;
+
+      if (!filling.isFull()) {
+        filling.add(event);
+
+        if (async || !filling.isFull())
+          return;
+      } else if (async) {
+        droppedEvents.increment();
+
+        return;
+      } else {
+        // The buffer was filled by async events, so this event goes into the next batch
+        deferred = true;
+      }
+    }
+
+    flush();
+
+    if (!deferred)
+      return;
+
+    synchronized (this) {
+      if (closed)
+        return;
+
+      if (filling.isFull()) {
+        droppedEvents.increment();
+      } else {
+        filling.add(event);
+      }
+    }
+  }
+
+  /**
+   * Delivers the events captured so far on the main thread
+   */
+  private void flush() {
+    if (flushing)
+      return;
+
+    synchronized (this) {
+      if (closed || filling.size == 0)
+        return;
+
+      Buffer full = filling;
+      filling = delivering;
+      delivering = full;
+    }
+
+    flushing = true;
+
+    Script script = getScript();
+
+    try {
+      script.invoke(EntryPoint.EVENT, label + " (batch)", () -> callback.executeVoid(delivering));
+    } catch (Exception e) {
+      script.getPlugin().getLogger().severe("Failed to handle " + label + " batch in script: " + script.getName());
+
+      e.printStackTrace();
+    } finally {
+      delivering.clear();
+
+      flushing = false;
+    }
+  }
+
+  /**
+   * Delivers the pending batches of every subscription, once per tick
+   */
+  public static void flushAll() {
+    for (BatchedEventSubscription subscription : subscriptions) {
+      subscription.flush();
+    }
+  }
+
+  @Override
+  synchronized void close() {
+    closed = true;
+
+    subscriptions.remove(this);
+
+    filling.clear();
+
+    // A batch being delivered is cleared once its callback returns
+    if (!flushing)
+      delivering.clear();
+  }
+}
@@ -0,0 +1,167 @@
+package com.mathhulk.spectra;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.command.CommandSender;
+import org.graalvm.polyglot.Value;
+
+/**
+ * Completion candidates published by a script for the arguments of a command,
+ * answered from prefix tries without entering the script's context.
+ *
+ * Each argument takes an array of candidates, or an object such as
+ * <code>{ values: () => [...], refresh: 5000, permission: "..." }</code>, whose
+ * function is called again on the interval. Candidates are strings or objects
+ * such as <code>{ value: "ban", permission: "moderation.ban" }</code>. Missing
+ * arguments are completed by the script's tab completer.
+ */
+public class CommandCompletions {
+  private final Script script;
+  private final List<Argument> arguments = new ArrayList<>();
+
+  private static class Argument {
+    private final String permission;
+    private final Value supplier;
+
+    private volatile CompletionTrie trie = new CompletionTrie();
+    private TimerWheel.Timer refreshTimer;
+
+    private Argument(String permission, Value supplier) {
+      this.permission = permission;
+      this.supplier = supplier;
+    }
+  }
+
+  private CommandCompletions(Script script) {
+    this.script = script;
+  }
+
+  public static CommandCompletions parse(Script script, String command, Value completions) {
+    if (!completions.hasArrayElements()) {
+      throw new IllegalArgumentException("Expected an array of completions for each argument");
+    }
+
+    CommandCompletions commandCompletions = new CommandCompletions(script);
+
+    try {
+      commandCompletions.parseArguments(command, completions);
+    } catch (RuntimeException e) {
+      // Refreshes scheduled for earlier arguments would otherwise never be cancelled
+      commandCompletions.close();
+
+      throw e;
+    }
+
+    return commandCompletions;
+  }
+
+  private void parseArguments(String command, Value completions) {
+    for (long i = 0; i < completions.getArraySize(); i++) {
+      Value completion = completions.getArrayElement(i);
+
+      if (completion.isNull()) {
+        arguments.add(null);
+        continue;
+      }
+
+      if (completion.hasArrayElements()) {
+        Argument argument = new Argument(null, null);
+        argument.trie = build(completion);
+
+        arguments.add(argument);
+        continue;
+      }
+
+      Value permission = completion.getMember("permission");
+      Value values = completion.getMember("values");
+
+      if (values == null || values.isNull()) {
+        throw new IllegalArgumentException("Expected values for argument " + (i + 1) + " of /" + command);
+      }
+
+      Value refresh = completion.getMember("refresh");
+      long interval = refresh == null || refresh.isNull() ? 0 : refresh.asLong();
+
+      // A refresh of 0 would call the script on every tick
+      if (refresh != null && !refresh.isNull() && interval <= 0) {
+        throw new IllegalArgumentException("Expected a positive refresh for argument " + (i + 1) + " of /" + command
+            + " but found " + interval);
+      }
+
+      Argument argument = new Argument(permission == null || permission.isNull() ? null : permission.asString(),
+          values.canExecute() ? values : null);
+
+      argument.trie = build(values.canExecute() ? values.execute() : values);
+
+      if (argument.supplier != null && interval > 0) {
+        // Refreshes run in the script's event loop, like its other timers
+        argument.refreshTimer = Spectra.instance.getTimerWheel().schedule(script,
+            "/" + command + " (completions " + (i + 1) + ")", () -> argument.trie = build(argument.supplier.execute()),
+            interval, interval);
+      }
+
+      arguments.add(argument);
+    }
+  }
+
+  private static CompletionTrie build(Value candidates) {
+    CompletionTrie trie = new CompletionTrie();
+
+    for (long i = 0; i < candidates.getArraySize(); i++) {
+      Value candidate = candidates.getArrayElement(i);
+
+      if (candidate.isString()) {
+        trie.add(candidate.asString(), null);
+        continue;
+      }
+
+      Value permission = candidate.getMember("permission");
+
+      trie.add(candidate.getMember("value").asString(),
+          permission == null || permission.isNull() ? null : permission.asString());
+    }
+
+    return trie;
+  }
+
+  /**
+   * Checks whether the argument being typed is completed from a trie
+   */
+  public Boolean handles(String[] args) {
+    int index = args.length - 1;
+
+    return index >= 0 && index < arguments.size() && arguments.get(index) != null;
+  }
+
+  public List<String> complete(CommandSender sender, String[] args) {
+    Argument argument = arguments.get(args.length - 1);
+
+    if (argument.permission != null && !sender.hasPermission(argument.permission))
+      return new ArrayList<>();
+
+    return argument.trie.complete(args[args.length - 1], sender::hasPermission);
+  }
+
+  public int getRefreshTimerCount() {
+    int count = 0;
+
+    for (Argument argument : arguments) {
+      if (argument != null && argument.refreshTimer != null)
+        count++;
+    }
+
+    return count;
+  }
+
+  public void close() {
+    for (Argument argument : arguments) {
+      if (argument != null && argument.refreshTimer != null)
+        Spectra.instance.getTimerWheel().cancel(argument.refreshTimer);
+    }
+  }
+
+  public Script getScript() {
+    return script;
+  }
+}
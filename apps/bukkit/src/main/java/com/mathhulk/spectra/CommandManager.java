@@ -1,16 +1,10 @@
 package com.mathhulk.spectra;
 
-import org.bukkit.Bukkit;
-import org.bukkit.Server;
 import org.bukkit.command.Command;
-import org.bukkit.command.CommandMap;
 import org.bukkit.command.CommandSender;
-import org.bukkit.plugin.Plugin;
-import org.bukkit.plugin.SimplePluginManager;
 import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyObject;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -20,98 +14,32 @@ public class CommandManager {
   private final Script script;
 
   private final ArrayList<Command> commands = new ArrayList<>();
+  private final HashMap<Command, CommandCompletions> completions = new HashMap<>();
 
   CommandManager(Script script) {
     this.script = script;
   }
 
-  /**
-   * Syncs commands on the main thread using reflection
-   */
-  private void syncCommands() {
-    Plugin plugin = getScript().getPlugin();
-
-    Runnable runnable = () -> {
-      try {
-        Server server = plugin.getServer();
-        Method syncCommandsMethod = server.getClass().getDeclaredMethod("syncCommands");
-        syncCommandsMethod.setAccessible(true);
-        syncCommandsMethod.invoke(server);
-        syncCommandsMethod.setAccessible(false);
-      } catch (Exception e) {
-        throw new RuntimeException("Failed to sync commands", e);
-      }
-    };
-
-    if (Bukkit.isPrimaryThread()) {
-      runnable.run();
-
-      return;
-    }
-
-    Bukkit.getScheduler().runTask(plugin, runnable);
-  }
-
-  /**
-   * Gets the commandMap field using reflection
-   */
-  private CommandMap getCommandMap() {
-    try {
-      SimplePluginManager pluginManager = (SimplePluginManager) script.getPlugin().getServer().getPluginManager();
-      Field commandMapField = pluginManager.getClass().getDeclaredField("commandMap");
-
-      commandMapField.setAccessible(true);
-      CommandMap commandMap = (CommandMap) commandMapField.get(pluginManager);
-      commandMapField.setAccessible(false);
-
-      return commandMap;
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to get commandMap", e);
-    }
-  }
-
-  /**
-   * Gets the knownCommands field using reflection
-   */
-  private HashMap<String, Command> getKnownCommands() {
-    try {
-      CommandMap commandMap = getCommandMap();
-      Field knownCommandsField = commandMap.getClass().getSuperclass().getDeclaredField("knownCommands");
-
-      knownCommandsField.setAccessible(true);
-      @SuppressWarnings("unchecked")
-      HashMap<String, Command> knownCommands = (HashMap<String, Command>) knownCommandsField.get(commandMap);
-      knownCommandsField.setAccessible(false);
-
-      return knownCommands;
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to get knownCommands", e);
-    }
-  }
-
   public void removeCommands() {
-    for (Command command : commands) {
+    for (Command command : new ArrayList<>(commands)) {
       removeCommand(command);
     }
   }
 
   public void removeCommand(Command command) {
-    if (!commands.contains(command)) {
+    if (!commands.remove(command)) {
       return;
     }
 
-    try {
-      // command.unregister(getCommandMap());
-      getKnownCommands().remove(command.getName());
-      getKnownCommands().remove(script.getName() + ":" + command.getName());
-      syncCommands();
+    CommandCompletions commandCompletions = completions.remove(command);
 
-      script.getPlugin().getLogger().info("Removed command: " + command.getName());
-    } catch (Exception e) {
-      script.getPlugin().getLogger().severe("Failed to remove command: " + command.getName());
+    if (commandCompletions != null)
+      commandCompletions.close();
 
-      e.printStackTrace();
-    }
+    // Changes are applied with a single sync on the next tick
+    Spectra.instance.getCommandRegistry().unregister(script.getName(), command);
+
+    script.getPlugin().getLogger().info("Removed command: " + command.getName());
   }
 
   public Command addCommand(Value options, ExecutorFunction executor,
@@ -126,7 +54,21 @@ public class CommandManager {
       parsedOptions.put("name", options.asString());
     } else {
       for (String key : options.getMemberKeys()) {
-        parsedOptions.put(key, options.getMember(key).asString());
+        Value value = options.getMember(key);
+
+        if (key.equals("completions") || key.equals("arguments")) {
+          parsedOptions.put(key, value);
+        } else if (value.hasArrayElements()) {
+          ArrayList<String> values = new ArrayList<>();
+
+          for (long i = 0; i < value.getArraySize(); i++) {
+            values.add(value.getArrayElement(i).asString());
+          }
+
+          parsedOptions.put(key, values);
+        } else {
+          parsedOptions.put(key, value.asString());
+        }
       }
     }
 
@@ -145,20 +87,56 @@ public class CommandManager {
       throw new IllegalArgumentException("Expected name but found null");
     }
 
+    Value completionsOption = (Value) options.get("completions");
+    Value argumentsOption = (Value) options.get("arguments");
+
+    // Cancelled if the command fails to register
+    CommandCompletions parsedCompletions = null;
+
     try {
+      ArgumentSchema schema = argumentsOption == null ? null : ArgumentSchema.parse(argumentsOption);
+
+      CommandCompletions completions = completionsOption == null ? null
+          : CommandCompletions.parse(script, name, completionsOption);
+
+      parsedCompletions = completions;
+
       Command command = new Command(name) {
         @Override
         public boolean execute(CommandSender sender, String label, String[] args) {
-          return executor.apply(sender, this, label, args);
+          ProxyObject values = null;
+
+          // Arguments are validated before the script is called
+          if (schema != null) {
+            try {
+              values = schema.resolve(sender, args);
+            } catch (ArgumentSchema.ArgumentException e) {
+              sender.sendMessage(e.getMessage());
+              sender.sendMessage("Usage: " + schema.getUsage(label));
+
+              return true;
+            }
+          }
+
+          ProxyObject resolvedValues = values;
+
+          return script.invoke(EntryPoint.COMMAND, "/" + name,
+              () -> executor.apply(sender, this, label, args, resolvedValues), true);
         }
 
         @Override
         public List<String> tabComplete(CommandSender sender, String alias, String[] args) {
+          // Published candidates are answered without entering the script
+          if (completions != null && completions.handles(args)) {
+            return completions.complete(sender, args);
+          }
+
           if (tabCompleter == null) {
-            return new ArrayList<>();
+            return schema == null ? new ArrayList<>() : schema.complete(args);
           }
 
-          return tabCompleter.apply(sender, this, alias, args);
+          return script.invoke(EntryPoint.COMMAND, "/" + name + " (tab)",
+              () -> tabCompleter.apply(sender, this, alias, args), new ArrayList<>());
         }
       };
 
@@ -178,17 +156,23 @@ public class CommandManager {
       String usage = (String) options.get("usage");
       if (usage != null)
         command.setUsage(usage);
+      else if (schema != null)
+        command.setUsage(schema.getUsage(name));
 
-      // getKnownCommands().put(name, command);
-      getCommandMap().register(script.getName(), command);
-      syncCommands();
+      Spectra.instance.getCommandRegistry().register(script.getName(), command);
 
       commands.add(command);
 
+      if (completions != null)
+        this.completions.put(command, completions);
+
       script.getPlugin().getLogger().info("Added command: " + name);
 
       return command;
     } catch (Exception e) {
+      if (parsedCompletions != null)
+        parsedCompletions.close();
+
       script.getPlugin().getLogger().severe("Failed to add command: " + name);
 
       e.printStackTrace();
@@ -197,13 +181,43 @@ public class CommandManager {
     }
   }
 
+  /**
+   * Gets the number of timers refreshing the completions of the commands
+   */
+  public int getRefreshTimerCount() {
+    int count = 0;
+
+    for (CommandCompletions commandCompletions : completions.values()) {
+      count += commandCompletions.getRefreshTimerCount();
+    }
+
+    return count;
+  }
+
+  /**
+   * Gets a command added by the script by its name or one of its aliases
+   */
+  public Command getCommand(String name) {
+    for (Command command : commands) {
+      if (command.getName().equalsIgnoreCase(name))
+        return command;
+
+      for (String alias : command.getAliases()) {
+        if (alias.equalsIgnoreCase(name))
+          return command;
+      }
+    }
+
+    return null;
+  }
+
   public Script getScript() {
     return script;
   }
 
   @FunctionalInterface
   public interface ExecutorFunction {
-    boolean apply(CommandSender sender, Command command, String label, String[] args);
+    boolean apply(CommandSender sender, Command command, String label, String[] args, ProxyObject values);
   }
 
   @FunctionalInterface
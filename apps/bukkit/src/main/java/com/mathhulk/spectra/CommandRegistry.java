@@ -0,0 +1,178 @@
+package com.mathhulk.spectra;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bukkit.Server;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandMap;
+import org.bukkit.command.SimpleCommandMap;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.SimplePluginManager;
+
+/**
+ * Applies the command changes of every script on the main thread once per
+ * tick, and sends the command tree to players only if it changed.
+ *
+ * The server internals are resolved once, into handles which are reused.
+ */
+public class CommandRegistry {
+  private final Plugin plugin;
+
+  private CommandMap commandMap;
+  private Map<String, Command> knownCommands;
+  private MethodHandle syncCommands;
+  private Boolean resolveFailed = false;
+
+  private final Map<Command, Change> pendingChanges = new LinkedHashMap<>();
+
+  private record Change(String prefix, Boolean add) {
+  }
+
+  public CommandRegistry(Plugin plugin) {
+    this.plugin = plugin;
+  }
+
+  /**
+   * Resolves the command map, its known commands and the syncCommands method
+   * of the server, returning whether they could be resolved. A failure is
+   * logged once.
+   */
+  @SuppressWarnings("unchecked")
+  private synchronized Boolean resolve() {
+    if (commandMap != null)
+      return true;
+
+    if (resolveFailed)
+      return false;
+
+    try {
+      Server server = plugin.getServer();
+
+      Field commandMapField = SimplePluginManager.class.getDeclaredField("commandMap");
+      VarHandle commandMapHandle = MethodHandles.privateLookupIn(SimplePluginManager.class, MethodHandles.lookup())
+          .unreflectVarHandle(commandMapField);
+
+      CommandMap resolvedCommandMap = (CommandMap) commandMapHandle.get(server.getPluginManager());
+
+      Field knownCommandsField = SimpleCommandMap.class.getDeclaredField("knownCommands");
+      VarHandle knownCommandsHandle = MethodHandles.privateLookupIn(SimpleCommandMap.class, MethodHandles.lookup())
+          .unreflectVarHandle(knownCommandsField);
+
+      knownCommands = (Map<String, Command>) knownCommandsHandle.get(resolvedCommandMap);
+
+      syncCommands = MethodHandles.privateLookupIn(server.getClass(), MethodHandles.lookup())
+          .findVirtual(server.getClass(), "syncCommands", MethodType.methodType(void.class))
+          .bindTo(server);
+
+      commandMap = resolvedCommandMap;
+
+      return true;
+    } catch (Exception e) {
+      resolveFailed = true;
+
+      plugin.getLogger().severe("Failed to resolve the command map, script commands stay queued");
+
+      e.printStackTrace();
+
+      return false;
+    }
+  }
+
+  /**
+   * Queues a command to be registered under a prefix. Adding a command which
+   * is queued for removal cancels both changes.
+   */
+  public synchronized void register(String prefix, Command command) {
+    Change change = pendingChanges.get(command);
+
+    if (change != null && !change.add()) {
+      pendingChanges.remove(command);
+      return;
+    }
+
+    pendingChanges.put(command, new Change(prefix, true));
+  }
+
+  public synchronized void unregister(String prefix, Command command) {
+    Change change = pendingChanges.get(command);
+
+    if (change != null && change.add()) {
+      pendingChanges.remove(command);
+      return;
+    }
+
+    pendingChanges.put(command, new Change(prefix, false));
+  }
+
+  private Boolean apply(Command command, Change change) {
+    try {
+      if (change.add()) {
+        commandMap.register(change.prefix(), command);
+
+        return true;
+      }
+
+      // Removes the command along with its prefixed name and aliases
+      Boolean removed = knownCommands.values().removeIf((knownCommand) -> knownCommand == command);
+
+      command.unregister(commandMap);
+
+      return removed;
+    } catch (Exception e) {
+      plugin.getLogger().severe("Failed to " + (change.add() ? "register" : "unregister") + " command: "
+          + command.getName());
+
+      e.printStackTrace();
+
+      return false;
+    }
+  }
+
+  /**
+   * Applies the queued changes, syncing the commands of online players once if
+   * any command was added or removed. Nothing is applied while the command map
+   * cannot be resolved.
+   */
+  public void flush() {
+    Map<Command, Change> changes;
+
+    synchronized (this) {
+      // Changes stay queued until they can be applied
+      if (pendingChanges.isEmpty() || !resolve())
+        return;
+
+      changes = new LinkedHashMap<>(pendingChanges);
+      pendingChanges.clear();
+    }
+
+    Boolean changed = false;
+
+    // Removals come first, so a reloaded script gets back its command names
+    for (Map.Entry<Command, Change> entry : changes.entrySet()) {
+      if (!entry.getValue().add())
+        changed |= apply(entry.getKey(), entry.getValue());
+    }
+
+    for (Map.Entry<Command, Change> entry : changes.entrySet()) {
+      if (entry.getValue().add())
+        changed |= apply(entry.getKey(), entry.getValue());
+    }
+
+    if (!changed)
+      return;
+
+    try {
+      syncCommands.invokeExact();
+    } catch (Throwable e) {
+      plugin.getLogger().severe("Failed to sync commands");
+
+      e.printStackTrace();
+    }
+  }
+}
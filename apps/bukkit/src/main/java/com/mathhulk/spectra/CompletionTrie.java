@@ -0,0 +1,78 @@
+package com.mathhulk.spectra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * A prefix trie of completion candidates, matched case-insensitively. Each
+ * candidate may require a permission of the sender.
+ */
+public class CompletionTrie {
+  private static final int MAX_RESULTS = Integer.getInteger("spectra.completions.max-results", 100);
+
+  private final Node root = new Node();
+  private int size = 0;
+
+  public record Candidate(String value, String permission) {
+  }
+
+  private static class Node {
+    private final Map<Character, Node> children = new TreeMap<>();
+    private final List<Candidate> candidates = new ArrayList<>(1);
+  }
+
+  public void add(String value, String permission) {
+    Node node = root;
+
+    for (char character : value.toLowerCase().toCharArray()) {
+      node = node.children.computeIfAbsent(character, (_) -> new Node());
+    }
+
+    node.candidates.add(new Candidate(value, permission));
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Finds the candidates starting with a prefix, in alphabetical order, which
+   * the sender is allowed to see
+   */
+  public List<String> complete(String prefix, Predicate<String> hasPermission) {
+    Node node = root;
+
+    for (char character : prefix.toLowerCase().toCharArray()) {
+      node = node.children.get(character);
+
+      if (node == null)
+        return new ArrayList<>();
+    }
+
+    List<String> results = new ArrayList<>();
+    collect(node, hasPermission, results);
+
+    return results;
+  }
+
+  private static void collect(Node node, Predicate<String> hasPermission, List<String> results) {
+    for (Candidate candidate : node.candidates) {
+      if (results.size() >= MAX_RESULTS)
+        return;
+
+      if (candidate.permission() == null || hasPermission.test(candidate.permission()))
+        results.add(candidate.value());
+    }
+
+    for (Node child : node.children.values()) {
+      if (results.size() >= MAX_RESULTS)
+        return;
+
+      collect(child, hasPermission, results);
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package com.mathhulk.spectra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Registers one Bukkit handler per plugin, event class, priority and
+ * ignoreCancelled flag, and fans events out to every script subscribed to it.
+ *
+ * Handlers are registered under the plugin which owns the scripts, so Bukkit
+ * attributes their timings to it, and are unregistered once their last
+ * subscription is removed.
+ */
+public class EventDispatcher {
+  private static final EventSubscription[] NO_SUBSCRIPTIONS = new EventSubscription[0];
+
+  private final Map<Key, Slot> slots = new ConcurrentHashMap<>();
+
+  private record Key(Plugin plugin, Class<? extends Event> eventClass, EventPriority priority,
+      Boolean ignoreCancelled) {
+    private Key(EventSubscription subscription) {
+      this(subscription.getScript().getPlugin(), subscription.getEventClass(), subscription.getPriority(),
+          subscription.isIgnoringCancelled());
+    }
+  }
+
+  /**
+   * The Bukkit registration for a plugin, event class and priority.
+   * Subscriptions are kept in a copy-on-write array, so dispatching never
+   * locks.
+   *
+   * Slots which ignore cancelled events are registered with Bukkit as such, so
+   * cancelled events are dropped before the executor is called.
+   */
+  private class Slot implements Listener, EventExecutor {
+    private final Key key;
+
+    private volatile EventSubscription[] subscriptions = NO_SUBSCRIPTIONS;
+    private Boolean registered = false;
+    private long registeredTime;
+
+    // The event being or last dispatched, to tell whether a replay is needed
+    private volatile Event lastEvent;
+
+    private Slot(Key key) {
+      this.key = key;
+    }
+
+    private synchronized void add(EventSubscription subscription) {
+      EventSubscription[] current = subscriptions;
+      EventSubscription[] next = Arrays.copyOf(current, current.length + 1);
+      next[current.length] = subscription;
+
+      subscriptions = next;
+    }
+
+    /**
+     * Removes a subscription, returning whether the slot is now empty
+     */
+    private synchronized Boolean remove(EventSubscription subscription) {
+      EventSubscription[] current = subscriptions;
+
+      int index = Arrays.asList(current).indexOf(subscription);
+
+      if (index == -1)
+        return current.length == 0;
+
+      EventSubscription[] next = new EventSubscription[current.length - 1];
+      System.arraycopy(current, 0, next, 0, index);
+      System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+
+      subscriptions = next;
+
+      return next.length == 0;
+    }
+
+    private synchronized void register() {
+      Plugin plugin = key.plugin();
+
+      // Bukkit only registers listeners for enabled plugins
+      if (registered || !plugin.isEnabled())
+        return;
+
+      plugin.getServer().getPluginManager().registerEvent(key.eventClass(), this, key.priority(), this, plugin,
+          key.ignoreCancelled());
+
+      registered = true;
+      registeredTime = System.nanoTime();
+    }
+
+    private synchronized void unregister() {
+      if (!registered)
+        return;
+
+      HandlerList.unregisterAll(this);
+
+      registered = false;
+    }
+
+    @Override
+    public void execute(Listener listener, Event event) {
+      EventSubscription[] current = subscriptions;
+
+      // Handlers of a parent event class also receive other subclasses
+      if (!key.eventClass().isInstance(event))
+        return;
+
+      lastEvent = event;
+
+      if (current.length == 0)
+        return;
+
+      for (EventSubscription subscription : current) {
+        subscription.handle(event);
+      }
+    }
+  }
+
+  public void subscribe(EventSubscription subscription) {
+    // Computed atomically, so a slot being emptied is never subscribed to
+    slots.compute(new Key(subscription), (key, slot) -> {
+      if (slot == null)
+        slot = new Slot(key);
+
+      slot.add(subscription);
+      slot.register();
+
+      return slot;
+    });
+  }
+
+  public void unsubscribe(EventSubscription subscription) {
+    slots.computeIfPresent(new Key(subscription), (_, slot) -> {
+      if (!slot.remove(subscription))
+        return slot;
+
+      slot.unregister();
+
+      return null;
+    });
+  }
+
+  /**
+   * Delivers an event being called at a priority to the subscriptions of a
+   * script at that priority which missed it: those whose handler was
+   * registered with Bukkit during the call, and those whose handler already
+   * ran for it. Handlers which have yet to run deliver it themselves.
+   */
+  public void replay(Event event, Script script, EventPriority priority, long registeredAfter) {
+    for (Slot slot : slots.values()) {
+      Key key = slot.key;
+
+      if (key.priority() != priority || !key.eventClass().isInstance(event))
+        continue;
+
+      synchronized (slot) {
+        if (!slot.registered || (slot.registeredTime < registeredAfter && slot.lastEvent != event))
+          continue;
+      }
+
+      if (key.ignoreCancelled() && event instanceof Cancellable cancellable && cancellable.isCancelled())
+        continue;
+
+      for (EventSubscription subscription : slot.subscriptions) {
+        if (subscription.getScript() == script)
+          subscription.handle(event);
+      }
+    }
+  }
+
+  public List<EventSubscription> getSubscriptions() {
+    List<EventSubscription> subscriptions = new ArrayList<>();
+
+    for (Slot slot : slots.values()) {
+      subscriptions.addAll(Arrays.asList(slot.subscriptions));
+    }
+
+    return subscriptions;
+  }
+
+  /**
+   * Registers the handlers of subscriptions made before their plugin was
+   * enabled
+   */
+  public void bind() {
+    for (Slot slot : slots.values()) {
+      slot.register();
+    }
+  }
+
+  /**
+   * Forgets the handlers Bukkit removes when a plugin is disabled
+   */
+  public void unbind(Plugin plugin) {
+    for (Slot slot : slots.values()) {
+      if (slot.key.plugin() != plugin)
+        continue;
+
+      synchronized (slot) {
+        slot.registered = false;
+      }
+    }
+  }
+}
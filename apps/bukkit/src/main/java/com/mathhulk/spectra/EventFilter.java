@@ -0,0 +1,258 @@
+package com.mathhulk.spectra;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.permissions.Permissible;
+import org.graalvm.polyglot.Value;
+
+/**
+ * A declarative filter passed to addEventListener, such as
+ * <code>{ world: "arena", permission: "arena.play", cancelled: false }</code>.
+ *
+ * The filter is compiled into a predicate against the declared event class, so
+ * rejected events never cross into the script.
+ */
+public class EventFilter {
+  private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+  private Set<String> worlds;
+  private List<String> permissions;
+  private Set<Material> materials;
+  private Set<EntityType> entityTypes;
+  private Boolean cancelled;
+
+  public static EventFilter parse(Value filter) {
+    EventFilter eventFilter = new EventFilter();
+
+    List<String> worlds = parseStrings(filter, "world");
+
+    if (worlds != null)
+      eventFilter.worlds = Set.copyOf(worlds);
+
+    eventFilter.permissions = parseStrings(filter, "permission");
+
+    List<String> materials = parseStrings(filter, "material");
+
+    if (materials != null) {
+      Set<Material> parsedMaterials = new HashSet<>();
+
+      for (String name : materials) {
+        Material material = Material.matchMaterial(name);
+
+        if (material == null) {
+          throw new IllegalArgumentException("Unknown material: " + name);
+        }
+
+        parsedMaterials.add(material);
+      }
+
+      eventFilter.materials = Set.copyOf(parsedMaterials);
+    }
+
+    List<String> entityTypes = parseStrings(filter, "entityType");
+
+    if (entityTypes != null) {
+      Set<EntityType> parsedEntityTypes = new HashSet<>();
+
+      for (String name : entityTypes) {
+        parsedEntityTypes.add(EntityType.valueOf(name.toUpperCase()));
+      }
+
+      eventFilter.entityTypes = Set.copyOf(parsedEntityTypes);
+    }
+
+    Value cancelled = filter.getMember("cancelled");
+
+    if (cancelled != null && !cancelled.isNull())
+      eventFilter.cancelled = cancelled.asBoolean();
+
+    return eventFilter;
+  }
+
+  private static List<String> parseStrings(Value filter, String key) {
+    Value value = filter.getMember(key);
+
+    if (value == null || value.isNull())
+      return null;
+
+    if (value.isString())
+      return List.of(value.asString());
+
+    List<String> strings = new ArrayList<>();
+
+    for (long i = 0; i < value.getArraySize(); i++) {
+      strings.add(value.getArrayElement(i).asString());
+    }
+
+    return List.copyOf(strings);
+  }
+
+  /**
+   * Compiles the filter for an event class, failing early when the event has
+   * nothing to match a condition against
+   */
+  public Predicate<Event> compile(Class<? extends Event> eventClass) {
+    List<Predicate<Event>> conditions = new ArrayList<>();
+
+    if (cancelled != null) {
+      if (!Cancellable.class.isAssignableFrom(eventClass)) {
+        throw new IllegalArgumentException(eventClass.getSimpleName() + " cannot be cancelled");
+      }
+
+      Boolean expected = cancelled;
+
+      conditions.add((event) -> ((Cancellable) event).isCancelled() == expected);
+    }
+
+    if (worlds != null) {
+      Function<Event, Object> accessor = findAccessor(eventClass, "world",
+          List.of(World.class, Entity.class, Block.class, Location.class),
+          "getWorld", "getPlayer", "getEntity", "getWhoClicked", "getBlock", "getLocation");
+
+      conditions.add((event) -> {
+        World world = toWorld(accessor.apply(event));
+
+        return world != null && worlds.contains(world.getName());
+      });
+    }
+
+    if (permissions != null) {
+      Function<Event, Object> accessor = findAccessor(eventClass, "permission", List.of(Permissible.class),
+          "getPlayer", "getWhoClicked", "getEntity");
+
+      conditions.add((event) -> {
+        if (!(accessor.apply(event) instanceof Permissible permissible))
+          return false;
+
+        for (String permission : permissions) {
+          if (!permissible.hasPermission(permission))
+            return false;
+        }
+
+        return true;
+      });
+    }
+
+    if (materials != null) {
+      Function<Event, Object> accessor = findAccessor(eventClass, "material",
+          List.of(Material.class, Block.class, ItemStack.class),
+          "getMaterial", "getBlock", "getClickedBlock", "getItem", "getItemInHand", "getCurrentItem");
+
+      conditions.add((event) -> {
+        Material material = toMaterial(accessor.apply(event));
+
+        return material != null && materials.contains(material);
+      });
+    }
+
+    if (entityTypes != null) {
+      Function<Event, Object> accessor = findAccessor(eventClass, "entityType",
+          List.of(EntityType.class, Entity.class), "getEntityType", "getEntity", "getPlayer", "getWhoClicked");
+
+      conditions.add((event) -> {
+        Object value = accessor.apply(event);
+
+        if (value instanceof Entity entity)
+          value = entity.getType();
+
+        return value != null && entityTypes.contains(value);
+      });
+    }
+
+    if (conditions.isEmpty())
+      return null;
+
+    @SuppressWarnings("unchecked")
+    Predicate<Event>[] compiled = conditions.toArray(new Predicate[0]);
+
+    return (event) -> {
+      for (Predicate<Event> condition : compiled) {
+        if (!condition.test(event))
+          return false;
+      }
+
+      return true;
+    };
+  }
+
+  private static Function<Event, Object> findAccessor(Class<? extends Event> eventClass, String condition,
+      List<Class<?>> types, String... names) {
+    for (String name : names) {
+      Method method;
+
+      try {
+        method = eventClass.getMethod(name);
+      } catch (NoSuchMethodException e) {
+        continue;
+      }
+
+      if (types.stream().noneMatch((type) -> type.isAssignableFrom(method.getReturnType())))
+        continue;
+
+      MethodHandle accessor;
+
+      try {
+        accessor = MethodHandles.publicLookup().unreflect(method).asType(ACCESSOR_TYPE);
+      } catch (IllegalAccessException e) {
+        continue;
+      }
+
+      return (event) -> {
+        try {
+          return (Object) accessor.invokeExact((Object) event);
+        } catch (Throwable e) {
+          return null;
+        }
+      };
+    }
+
+    throw new IllegalArgumentException(eventClass.getSimpleName() + " cannot be filtered by " + condition);
+  }
+
+  private static World toWorld(Object value) {
+    if (value instanceof World world)
+      return world;
+
+    if (value instanceof Entity entity)
+      return entity.getWorld();
+
+    if (value instanceof Block block)
+      return block.getWorld();
+
+    if (value instanceof Location location)
+      return location.getWorld();
+
+    return null;
+  }
+
+  private static Material toMaterial(Object value) {
+    if (value instanceof Material material)
+      return material;
+
+    if (value instanceof Block block)
+      return block.getType();
+
+    if (value instanceof ItemStack itemStack)
+      return itemStack.getType();
+
+    return null;
+  }
+}
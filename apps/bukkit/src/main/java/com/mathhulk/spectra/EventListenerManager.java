@@ -1,21 +1,22 @@
 package com.mathhulk.spectra;
 
 import org.bukkit.event.Event;
-import org.bukkit.event.EventPriority;
-import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
-import org.bukkit.plugin.EventExecutor;
 import org.bukkit.plugin.Plugin;
+import org.graalvm.polyglot.Value;
 
 import java.util.ArrayList;
 
 public class EventListenerManager {
   private final Script script;
 
-  private final ArrayList<Listener> eventListeners = new ArrayList<>();
+  private final ArrayList<EventSubscription> eventListeners = new ArrayList<>();
+  private final AsyncEventContext asyncEventContext;
 
   public EventListenerManager(Script script) {
     this.script = script;
+
+    asyncEventContext = new AsyncEventContext(script);
   }
 
   public Script getScript() {
@@ -23,55 +24,50 @@ public class EventListenerManager {
   }
 
   public void removeEventListeners() {
-    for (Listener eventListener : eventListeners) {
+    for (EventSubscription eventListener : new ArrayList<>(eventListeners)) {
       removeEventListener(eventListener);
     }
+
+    asyncEventContext.close();
   }
 
   public void removeEventListener(Listener eventListener) {
-    if (!eventListeners.contains(eventListener)) {
+    if (!(eventListener instanceof EventSubscription subscription) || !eventListeners.remove(subscription)) {
       return;
     }
 
-    HandlerList.unregisterAll(eventListener);
-  }
-
-  public Listener addEventListener(Class<? extends Event> eventClass, EventListenerFunction callback,
-      EventPriority... optionalParameters) {
-    if (optionalParameters.length > 1) {
-      throw new IllegalArgumentException("Expected at most 3 arguments but found " + (optionalParameters.length + 2));
-    }
+    Spectra.instance.getEventDispatcher().unsubscribe(subscription);
 
-    if (optionalParameters.length == 0) {
-      return registerEventListener(eventClass, callback, EventPriority.NORMAL);
-    }
+    subscription.close();
+  }
 
-    return registerEventListener(eventClass, callback, optionalParameters[0]);
+  public Listener addEventListener(Class<? extends Event> eventClass, Value callback, Value... optionalParameters) {
+    return registerEventListener(eventClass, callback, EventListenerOptions.parse(optionalParameters));
   }
 
-  public Listener registerEventListener(Class<? extends Event> eventClass, EventListenerFunction callback,
-      EventPriority priority) {
+  public Listener registerEventListener(Class<? extends Event> eventClass, Value callback,
+      EventListenerOptions options) {
     Plugin plugin = script.getPlugin();
 
     try {
-      EventExecutor executor = (_, event) -> {
-        if (!eventClass.isInstance(event)) {
-          return;
-        }
+      EventSubscription eventListener;
 
-        callback.apply(event);
-      };
+      if (options.isAsync()) {
+        // Functions of the script cannot leave its context, so async handlers are modules of their own
+        if (!callback.isString()) {
+          throw new IllegalArgumentException("Expected the path of a module for an async event listener");
+        }
 
-      Listener eventListener = new Listener() {
-      };
+        eventListener = new AsyncEventSubscription(script, eventClass, options, asyncEventContext,
+            asyncEventContext.load(script.resolveModule(callback.asString())));
+      } else if (options.isBatched()) {
+        eventListener = new BatchedEventSubscription(script, eventClass, options, callback);
+      } else {
+        eventListener = new EventSubscription(script, eventClass, options, callback.as(EventListenerFunction.class));
+      }
 
-      // Register the executor
-      plugin.getServer().getPluginManager().registerEvent(
-          eventClass,
-          eventListener,
-          priority,
-          executor,
-          plugin);
+      // The dispatcher registers a single handler per plugin, event class and priority
+      Spectra.instance.getEventDispatcher().subscribe(eventListener);
 
       eventListeners.add(eventListener);
 
@@ -99,7 +95,6 @@ public class EventListenerManager {
 
   @FunctionalInterface
   public interface AddEventListenerFunction {
-    Listener apply(Class<? extends Event> eventClass, EventListenerFunction callback,
-        EventPriority... optionalParameters);
+    Listener apply(Class<? extends Event> eventClass, Value callback, Value... optionalParameters);
   }
 }
\ No newline at end of file
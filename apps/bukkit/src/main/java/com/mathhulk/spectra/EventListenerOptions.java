@@ -0,0 +1,138 @@
+package com.mathhulk.spectra;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.event.EventPriority;
+import org.graalvm.polyglot.Value;
+
+/**
+ * Options passed to addEventListener, either an EventPriority or an object
+ * such as <code>{ priority: "MONITOR", ignoreCancelled: true }</code> or
+ * <code>{ filter: { world: "arena" } }</code>.
+ *
+ * Async listeners, <code>{ async: true, fields: ["player.name"] }</code>, take
+ * the path of a module whose default export handles the snapshots in place of
+ * the callback.
+ *
+ * Batched listeners, <code>{ batch: { size: 256 }, fields: [...] }</code>,
+ * receive an array of snapshots once per tick or every <code>size</code> events.
+ */
+public class EventListenerOptions {
+  private static final int DEFAULT_BATCH_SIZE = Integer.getInteger("spectra.batch-size", 256);
+
+  private EventPriority priority = EventPriority.NORMAL;
+  private Boolean ignoreCancelled = false;
+  private Boolean async = false;
+  private int batchSize = 0;
+  private List<String> fields = List.of();
+  private EventFilter filter;
+
+  public static EventListenerOptions parse(Value... optionalParameters) {
+    if (optionalParameters.length > 1) {
+      throw new IllegalArgumentException("Expected at most 3 arguments but found " + (optionalParameters.length + 2));
+    }
+
+    EventListenerOptions options = new EventListenerOptions();
+
+    if (optionalParameters.length == 0 || optionalParameters[0].isNull())
+      return options;
+
+    Value parameter = optionalParameters[0];
+
+    if (parameter.isHostObject() && parameter.asHostObject() instanceof EventPriority priority) {
+      options.priority = priority;
+
+      return options;
+    }
+
+    Value priority = parameter.getMember("priority");
+
+    if (priority != null && !priority.isNull()) {
+      options.priority = priority.isHostObject() ? priority.as(EventPriority.class)
+          : EventPriority.valueOf(priority.asString().toUpperCase());
+    }
+
+    Value ignoreCancelled = parameter.getMember("ignoreCancelled");
+
+    if (ignoreCancelled != null && !ignoreCancelled.isNull())
+      options.ignoreCancelled = ignoreCancelled.asBoolean();
+
+    Value async = parameter.getMember("async");
+
+    if (async != null && !async.isNull())
+      options.async = async.asBoolean();
+
+    Value batch = parameter.getMember("batch");
+
+    if (batch != null && !batch.isNull()) {
+      if (batch.isBoolean()) {
+        options.batchSize = batch.asBoolean() ? DEFAULT_BATCH_SIZE : 0;
+      } else {
+        Value size = batch.getMember("size");
+
+        options.batchSize = size == null || size.isNull() ? DEFAULT_BATCH_SIZE : size.asInt();
+
+        if (options.batchSize < 1) {
+          throw new IllegalArgumentException("Expected a positive batch size but found " + options.batchSize);
+        }
+      }
+    }
+
+    Value fields = parameter.getMember("fields");
+
+    if (fields != null && fields.hasArrayElements()) {
+      List<String> parsedFields = new ArrayList<>();
+
+      for (long i = 0; i < fields.getArraySize(); i++) {
+        parsedFields.add(fields.getArrayElement(i).asString());
+      }
+
+      options.fields = List.copyOf(parsedFields);
+    }
+
+    Value filter = parameter.getMember("filter");
+
+    if (filter != null && !filter.isNull())
+      options.filter = EventFilter.parse(filter);
+
+    if (options.async && options.isBatched()) {
+      throw new IllegalArgumentException("Expected an event listener to be either async or batched");
+    }
+
+    if ((options.async || options.isBatched()) && options.fields.isEmpty()) {
+      throw new IllegalArgumentException("Expected fields to snapshot for an "
+          + (options.async ? "async" : "batched") + " event listener");
+    }
+
+    return options;
+  }
+
+  public EventPriority getPriority() {
+    return priority;
+  }
+
+  public Boolean isIgnoringCancelled() {
+    return ignoreCancelled;
+  }
+
+  public Boolean isAsync() {
+    return async;
+  }
+
+  public Boolean isBatched() {
+    return batchSize > 0;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public List<String> getFields() {
+    return fields;
+  }
+
+  public EventFilter getFilter() {
+    return filter;
+  }
+}
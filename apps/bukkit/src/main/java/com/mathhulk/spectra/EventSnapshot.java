@@ -0,0 +1,225 @@
+package com.mathhulk.spectra;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.event.Event;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+/**
+ * Captures declared fields of an event, such as <code>player.name</code>, into
+ * immutable values which are safe to read from another thread.
+ *
+ * Field paths are resolved to getters once, against the declared event class.
+ */
+public class EventSnapshot {
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+  private final List<String> fields;
+  private final List<MethodHandle[]> getters;
+
+  // The index of each field within a row of captured values
+  private final Map<String, Integer> indexes = new HashMap<>();
+
+  private EventSnapshot(List<String> fields, List<MethodHandle[]> getters) {
+    this.fields = fields;
+    this.getters = getters;
+
+    for (int i = 0; i < fields.size(); i++) {
+      indexes.put(fields.get(i), i);
+    }
+  }
+
+  public static EventSnapshot compile(Class<? extends Event> eventClass, List<String> fields) {
+    List<MethodHandle[]> getters = new ArrayList<>();
+
+    for (String field : fields) {
+      String[] segments = field.split("\\.");
+      MethodHandle[] chain = new MethodHandle[segments.length];
+
+      Class<?> type = eventClass;
+
+      for (int i = 0; i < segments.length; i++) {
+        Method method = findGetter(type, segments[i]);
+
+        if (method == null) {
+          throw new IllegalArgumentException("Unknown field " + field + " on " + eventClass.getSimpleName());
+        }
+
+        try {
+          chain[i] = MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+          throw new IllegalArgumentException("Inaccessible field " + field + " on " + eventClass.getSimpleName(), e);
+        }
+
+        type = method.getReturnType();
+      }
+
+      getters.add(chain);
+    }
+
+    return new EventSnapshot(List.copyOf(fields), getters);
+  }
+
+  private static Method findGetter(Class<?> type, String name) {
+    String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+    for (String candidate : List.of("get" + suffix, "is" + suffix, name)) {
+      try {
+        Method method = type.getMethod(candidate);
+
+        if (method.getReturnType() != void.class)
+          return method;
+      } catch (NoSuchMethodException e) {
+        // Try the next naming convention
+      }
+    }
+
+    return null;
+  }
+
+  public List<String> getFields() {
+    return fields;
+  }
+
+  /**
+   * Reads the fields of an event into a read-only object for the guest
+   */
+  public ProxyObject capture(Event event) {
+    Map<String, Object> values = new LinkedHashMap<>();
+
+    for (int i = 0; i < getters.size(); i++) {
+      values.put(fields.get(i), read(event, getters.get(i)));
+    }
+
+    return new ReadOnlyProxyObject(Collections.unmodifiableMap(values));
+  }
+
+  /**
+   * Reads the fields of an event into a row of a buffer, without allocating a
+   * snapshot
+   */
+  public void captureInto(Event event, Object[] values, int offset) {
+    for (int i = 0; i < getters.size(); i++) {
+      values[offset + i] = read(event, getters.get(i));
+    }
+  }
+
+  /**
+   * Creates a read-only object for the guest which reads the row of a buffer,
+   * reflecting whatever is captured into it
+   */
+  public ProxyObject view(Object[] values, int offset) {
+    return new RowProxyObject(values, offset);
+  }
+
+  private static Object read(Event event, MethodHandle[] chain) {
+    Object value = event;
+
+    try {
+      for (MethodHandle getter : chain) {
+        if (value == null)
+          return null;
+
+        value = (Object) getter.invokeExact(value);
+      }
+    } catch (Throwable e) {
+      return null;
+    }
+
+    return toImmutable(value);
+  }
+
+  private static Object toImmutable(Object value) {
+    if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+        || value instanceof Character)
+      return value;
+
+    if (value instanceof Enum<?> enumValue)
+      return enumValue.name();
+
+    if (value instanceof UUID)
+      return value.toString();
+
+    return String.valueOf(value);
+  }
+
+  private class RowProxyObject implements ProxyObject {
+    private final Object[] values;
+    private final int offset;
+
+    private RowProxyObject(Object[] values, int offset) {
+      this.values = values;
+      this.offset = offset;
+    }
+
+    @Override
+    public Object getMember(String key) {
+      Integer index = indexes.get(key);
+
+      return index == null ? null : values[offset + index];
+    }
+
+    @Override
+    public Object getMemberKeys() {
+      return ProxyArray.fromList(new ArrayList<>(fields));
+    }
+
+    @Override
+    public boolean hasMember(String key) {
+      return indexes.containsKey(key);
+    }
+
+    @Override
+    public void putMember(String key, Value value) {
+      throw new UnsupportedOperationException("Event snapshots are read-only");
+    }
+
+    @Override
+    public boolean removeMember(String key) {
+      throw new UnsupportedOperationException("Event snapshots are read-only");
+    }
+  }
+
+  /**
+   * Snapshots cannot be written to, so async listeners cannot cancel or modify
+   * the event
+   */
+  private record ReadOnlyProxyObject(Map<String, Object> values) implements ProxyObject {
+    @Override
+    public Object getMember(String key) {
+      return values.get(key);
+    }
+
+    @Override
+    public Object getMemberKeys() {
+      return ProxyArray.fromArray(values.keySet().toArray());
+    }
+
+    @Override
+    public boolean hasMember(String key) {
+      return values.containsKey(key);
+    }
+
+    @Override
+    public void putMember(String key, Value value) {
+      throw new UnsupportedOperationException("Event snapshots are read-only");
+    }
+
+    @Override
+    public boolean removeMember(String key) {
+      throw new UnsupportedOperationException("Event snapshots are read-only");
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.mathhulk.spectra;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+/**
+ * A script callback subscribed through the EventDispatcher. It is returned to
+ * scripts as the listener to pass to removeEventListener.
+ */
+public class EventSubscription implements Listener {
+  private final Script script;
+
+  private final Class<? extends Event> eventClass;
+  private final EventPriority priority;
+  private final Boolean ignoreCancelled;
+  private final EventListenerManager.EventListenerFunction callback;
+  private final Predicate<Event> filter;
+
+  private final LongAdder acceptedEvents = new LongAdder();
+  private final LongAdder rejectedEvents = new LongAdder();
+
+  protected final String label;
+
+  EventSubscription(Script script, Class<? extends Event> eventClass, EventListenerOptions options,
+      EventListenerManager.EventListenerFunction callback) {
+    this.script = script;
+    this.eventClass = eventClass;
+    this.callback = callback;
+
+    priority = options.getPriority();
+    ignoreCancelled = options.isIgnoringCancelled();
+    filter = options.getFilter() == null ? null : options.getFilter().compile(eventClass);
+
+    label = eventClass.getSimpleName();
+  }
+
+  public Script getScript() {
+    return script;
+  }
+
+  public Class<? extends Event> getEventClass() {
+    return eventClass;
+  }
+
+  public EventPriority getPriority() {
+    return priority;
+  }
+
+  public Boolean isIgnoringCancelled() {
+    return ignoreCancelled;
+  }
+
+  public String getLabel() {
+    return label;
+  }
+
+  public long getAcceptedEvents() {
+    return acceptedEvents.sum();
+  }
+
+  public long getRejectedEvents() {
+    return rejectedEvents.sum();
+  }
+
+  /**
+   * Applies the filter of the subscription before the event reaches the script
+   */
+  final void handle(Event event) {
+    if (filter != null && !filter.test(event)) {
+      rejectedEvents.increment();
+      return;
+    }
+
+    acceptedEvents.increment();
+
+    dispatch(event);
+  }
+
+  void dispatch(Event event) {
+    try {
+      script.invoke(EntryPoint.EVENT, label, () -> callback.apply(event));
+    } catch (Exception e) {
+      script.getPlugin().getLogger().severe("Failed to handle " + label + " in script: " + script.getName());
+
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Releases anything the subscription holds once it is unsubscribed
+   */
+  void close() {
+  }
+}
@@ -6,23 +6,37 @@ import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
 
 public class Script {
   private Boolean enabled = false;
   private Boolean loaded = false;
 
   private Context context;
+  // The parsed module, evaluated by load
+  private Value module;
   private Value exports;
 
   private EventListenerManager eventListenerManager;
   private CommandManager commandManager;
   private TaskManager taskManager;
+  private ScriptEventLoop eventLoop;
+  private WorkerManager workerManager;
 
   private final Plugin plugin;
   private final File file;
 
   private final String name;
 
+  private final ScriptHeader header;
+  private final ScriptBudget budget;
+  private String hash;
+
+  private volatile long lastInvokeTime = System.nanoTime();
+
   private final String language = "js";
   private final String mimeType = "application/javascript+module";
 
@@ -31,6 +45,37 @@ public class Script {
     this.plugin = plugin;
 
     name = file.getName();
+    header = ScriptHeader.read(file);
+    budget = new ScriptBudget(name, header, plugin.getLogger());
+    budget.setRecovery(this::recover);
+  }
+
+  /**
+   * Reloads the script once the statement limit has cancelled its context, on
+   * the next tick so the cancelled call can unwind first
+   */
+  private void recover() {
+    Context cancelledContext = context;
+
+    Spectra.instance.getServer().getScheduler().runTask(Spectra.instance, () -> {
+      if (!loaded || context != cancelledContext)
+        return;
+
+      Boolean wasEnabled = enabled;
+
+      try {
+        disable();
+
+        if (wasEnabled)
+          enable();
+
+        plugin.getLogger().info("Reloaded script after its context was cancelled: " + name);
+      } catch (Exception e) {
+        plugin.getLogger().severe("Failed to reload script after its context was cancelled: " + name);
+
+        e.printStackTrace();
+      }
+    });
   }
 
   public File getFile() {
@@ -49,6 +94,109 @@ public class Script {
     return plugin;
   }
 
+  /**
+   * Gets the content hash of the last prepared source
+   */
+  public String getHash() {
+    return hash;
+  }
+
+  /**
+   * Resolves a module next to the script, such as a worker or async listener,
+   * without leaving its directory
+   */
+  public File resolveModule(String path) {
+    Path directory = file.getAbsoluteFile().getParentFile().toPath();
+    File module = directory.resolve(path).normalize().toFile();
+
+    if (!module.toPath().startsWith(directory) || !module.isFile()) {
+      throw new IllegalArgumentException("Module not found: " + path);
+    }
+
+    return module;
+  }
+
+  public ScriptHeader getHeader() {
+    return header;
+  }
+
+  public ScriptBudget getBudget() {
+    return budget;
+  }
+
+  public ScriptEventLoop getEventLoop() {
+    return eventLoop;
+  }
+
+  public CommandManager getCommandManager() {
+    return commandManager;
+  }
+
+  /**
+   * Gets the time of the last call into the script, in nanoseconds
+   */
+  public long getLastInvokeTime() {
+    return lastInvokeTime;
+  }
+
+  /**
+   * Gets the number of pending timers, completion refreshes, workers and
+   * queued tasks of the script, which keep it busy without calling into it
+   */
+  public int getTaskCount() {
+    if (!loaded)
+      return 0;
+
+    return taskManager.getTaskCount() + commandManager.getRefreshTimerCount() + workerManager.getWorkerCount()
+        + eventLoop.getPendingTasks();
+  }
+
+  /**
+   * Calls into the script from the host, enforcing its budget and recording
+   * the time spent while profiling
+   */
+  public <T> T invoke(EntryPoint entryPoint, String label, Supplier<T> supplier, T fallback) {
+    return invoke(budget, entryPoint, label, supplier, fallback);
+  }
+
+  /**
+   * Calls into another context of the script, such as its async listener
+   * context, with the budget bound to that context
+   */
+  public <T> T invoke(ScriptBudget budget, EntryPoint entryPoint, String label, Supplier<T> supplier, T fallback) {
+    lastInvokeTime = System.nanoTime();
+
+    if (!ScriptProfiler.isActive())
+      return budget.call(entryPoint, supplier, fallback);
+
+    long startTime = System.nanoTime();
+
+    try {
+      return budget.call(entryPoint, supplier, fallback);
+    } finally {
+      ScriptProfiler.record(name, entryPoint, label, System.nanoTime() - startTime);
+    }
+  }
+
+  public void invoke(EntryPoint entryPoint, String label, Runnable runnable) {
+    invoke(budget, entryPoint, label, runnable);
+  }
+
+  public void invoke(ScriptBudget budget, EntryPoint entryPoint, String label, Runnable runnable) {
+    invoke(budget, entryPoint, label, () -> {
+      runnable.run();
+
+      return null;
+    }, null);
+  }
+
+  /**
+   * Scripts opt out of the shared engine with <code>// @engine isolated</code>
+   */
+  public Boolean usesSharedEngine() {
+    return !header.get("engine", "shared").equals("isolated") && !budget.requiresIsolatedEngine();
+  }
+
   public Boolean isEnabled() {
     return enabled;
   }
@@ -57,20 +205,35 @@ public class Script {
     return loaded;
   }
 
-  public Boolean load() {
-    if (loaded)
+  /**
+   * Creates the context, then reads and parses the source without evaluating
+   * the script, so it can run off the main thread. Nothing is registered until
+   * the script is loaded.
+   */
+  public Boolean prepare() {
+    if (loaded || module != null)
       return false;
 
     eventListenerManager = new EventListenerManager(this);
     commandManager = new CommandManager(this);
     taskManager = new TaskManager(this);
+    eventLoop = new ScriptEventLoop(this);
+    workerManager = new WorkerManager(this);
+    lastInvokeTime = System.nanoTime();
 
     // TODO: Security
-    context = Context.newBuilder(language)
+    Context.Builder builder = Context.newBuilder(language)
         .allowAllAccess(true)
-        .option("js.esm-eval-returns-exports", "true")
-        .option("engine.WarnInterpreterOnly", "false")
-        .build();
+        .option("js.esm-eval-returns-exports", "true");
+
+    // Isolated scripts get a bound engine which is closed along with the context
+    if (usesSharedEngine())
+      builder.engine(SharedEngine.getEngine());
+
+    budget.configure(builder);
+
+    context = builder.build();
+    budget.attach(context);
 
     context.getBindings(language).putMember("addCommand",
         (CommandManager.AddCommandFunction) commandManager::addCommand);
@@ -91,8 +254,49 @@ public class Script {
     context.getBindings(language).putMember("clearTimeout",
         (TaskManager.ClearTimeoutFunction) taskManager::clearTimeout);
 
+    context.getBindings(language).putMember("queueMicrotask",
+        (ScriptEventLoop.QueueMicrotaskFunction) eventLoop::queueMicrotask);
+    context.getBindings(language).putMember("setImmediate",
+        (ScriptEventLoop.SetImmediateFunction) eventLoop::setImmediate);
+
+    context.getBindings(language).putMember("isWorker", false);
+    context.getBindings(language).putMember("createWorker",
+        (WorkerManager.CreateWorkerFunction) workerManager::createWorker);
+
+    try {
+      // Built from the bytes which were hashed, so the hash matches the source
+      byte[] content = Files.readAllBytes(file.toPath());
+
+      Source source = Source.newBuilder(language, file).mimeType(mimeType)
+          .content(new String(content, StandardCharsets.UTF_8)).build();
+      hash = ScriptHash.of(content);
+
+      module = context.parse(source);
+
+      return true;
+    } catch (Exception e) {
+      plugin.getLogger().severe("Failed to prepare script: " + file.getName());
+
+      e.printStackTrace();
+
+      release();
+
+      return false;
+    }
+  }
+
+  /**
+   * Evaluates the script on the calling thread, preparing it first if needed
+   */
+  public Boolean load() {
+    if (loaded)
+      return false;
+
+    if (module == null && !prepare())
+      return false;
+
     try {
-      exports = context.eval(Source.newBuilder(language, file).mimeType(mimeType).build());
+      exports = module.execute();
 
       loaded = true;
 
@@ -102,10 +306,27 @@ public class Script {
 
       e.printStackTrace();
 
+      // Release anything registered before the failure
+      release();
+
       return false;
+    } finally {
+      module = null;
     }
   }
 
+  private void release() {
+    taskManager.removeTasks();
+    workerManager.removeWorkers();
+    eventLoop.close();
+    eventListenerManager.removeEventListeners();
+    commandManager.removeCommands();
+
+    context.close();
+
+    module = null;
+  }
+
   public Boolean enable() {
     // Load the script
     load();
@@ -113,6 +334,9 @@ public class Script {
     if (!loaded)
       return false;
 
+    // Statements of the module evaluation do not count against onEnable
+    budget.resetLimits();
+
     // Execute the onEnable event
     Value enableEvent = exports.getMember("onEnable");
 
@@ -125,17 +349,30 @@ public class Script {
   }
 
   public Boolean disable() {
-    if (!loaded)
+    // A prepared script only holds its context
+    if (!loaded) {
+      if (module != null)
+        release();
+
       return false;
+    }
 
     // Execute the onDisable event
-    Value disableEvent = exports.getMember("onDisable");
+    try {
+      Value disableEvent = enabled ? exports.getMember("onDisable") : null;
+
+      if (disableEvent != null)
+        disableEvent.executeVoid();
+    } catch (Exception e) {
+      plugin.getLogger().severe("Failed to execute onDisable in script: " + name);
 
-    if (disableEvent != null)
-      disableEvent.executeVoid();
+      e.printStackTrace();
+    }
 
     // Remove event listeners, commands, and tasks
     taskManager.removeTasks();
+    workerManager.removeWorkers();
+    eventLoop.close();
     eventListenerManager.removeEventListeners();
     commandManager.removeCommands();
 
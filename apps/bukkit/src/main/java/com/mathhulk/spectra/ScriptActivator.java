@@ -0,0 +1,266 @@
+package com.mathhulk.spectra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Defers creating the context of a script plugin until it is first used.
+ *
+ * Scripts opt in with <code>// @lazy</code> and declare what activates them in
+ * their header, e.g. <code>// @command warp setwarp</code> for a command and
+ * its aliases, or <code>// @event org.bukkit.event.player.PlayerJoinEvent HIGH</code>
+ * for an event and the priority the script listens at, NORMAL by default.
+ * Stubs are registered in their place, and the script is loaded when one of
+ * them is used. Scripts which have not been called for
+ * <code>// @idle-timeout</code> milliseconds are unloaded again.
+ *
+ * The event which activates a script is delivered to its listeners at the
+ * priority of the stub. Listeners at other priorities receive events from the
+ * next occurrence.
+ */
+public class ScriptActivator {
+  private static final long DEFAULT_IDLE_TIMEOUT = Long.getLong("spectra.lazy.idle-timeout", 300_000L);
+
+  private final Plugin plugin;
+  private final Script script;
+
+  private final List<Command> commands = new ArrayList<>();
+  private final List<EventStub> events = new ArrayList<>();
+  private final long idleTimeout;
+
+  private final Listener listener = new Listener() {
+  };
+
+  private BukkitTask idleTask;
+
+  private volatile Boolean installed = false;
+  private volatile Boolean active = false;
+
+  private record EventStub(Class<? extends Event> eventClass, EventPriority priority) {
+  }
+
+  public ScriptActivator(Plugin plugin, Script script) {
+    this.plugin = plugin;
+    this.script = script;
+
+    ScriptHeader header = script.getHeader();
+
+    idleTimeout = header.getLong("idle-timeout", DEFAULT_IDLE_TIMEOUT);
+
+    for (String command : header.getAll("command")) {
+      String[] names = command.trim().split("\\s+");
+
+      if (names[0].isEmpty())
+        continue;
+
+      commands.add(new StubCommand(names[0], Arrays.asList(names).subList(1, names.length)));
+    }
+
+    for (String event : header.getAll("event")) {
+      String[] values = event.trim().split("\\s+");
+
+      try {
+        Class<?> eventClass = Class.forName(values[0]);
+
+        if (!Event.class.isAssignableFrom(eventClass))
+          throw new IllegalArgumentException(values[0] + " is not an event");
+
+        EventPriority priority = values.length > 1 ? EventPriority.valueOf(values[1].toUpperCase())
+            : EventPriority.NORMAL;
+
+        events.add(new EventStub(eventClass.asSubclass(Event.class), priority));
+      } catch (Exception e) {
+        plugin.getLogger().severe("Failed to resolve event " + event + " in script: " + script.getName());
+
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Checks whether a script defers loading until it is used
+   */
+  public static Boolean isLazy(ScriptHeader header) {
+    return header.has("lazy");
+  }
+
+  private class StubCommand extends Command {
+    private StubCommand(String name, List<String> aliases) {
+      super(name);
+
+      setAliases(aliases);
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String label, String[] args) {
+      Command command = resolve(getName());
+
+      if (command == null) {
+        sender.sendMessage("Script " + script.getName() + " did not add /" + getName());
+
+        return true;
+      }
+
+      return command.execute(sender, label, args);
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String alias, String[] args) {
+      Command command = resolve(getName());
+
+      return command == null ? new ArrayList<>() : command.tabComplete(sender, alias, args);
+    }
+  }
+
+  /**
+   * Activates the script and gets the command it added in place of a stub,
+   * which keeps answering until the command registry is flushed
+   */
+  private Command resolve(String name) {
+    if (!activate())
+      return null;
+
+    CommandManager commandManager = script.getCommandManager();
+
+    return commandManager == null ? null : commandManager.getCommand(name);
+  }
+
+  /**
+   * Registers the stubs and starts checking whether the script is idle
+   */
+  public synchronized void install() {
+    if (installed)
+      return;
+
+    // Set first, as Bukkit only registers listeners for enabled plugins
+    installed = true;
+
+    registerStubs();
+
+    if (idleTimeout > 0)
+      idleTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::checkIdle, 20, 20);
+
+    plugin.getLogger().info("Deferred loading script until it is used: " + script.getName());
+  }
+
+  private void registerStubs() {
+    for (Command command : commands) {
+      Spectra.instance.getCommandRegistry().register(script.getName(), command);
+    }
+
+    for (EventStub stub : events) {
+      plugin.getServer().getPluginManager().registerEvent(stub.eventClass(), listener, stub.priority(),
+          (_, event) -> handle(stub, event), plugin);
+    }
+  }
+
+  private void unregisterStubs() {
+    for (Command command : commands) {
+      Spectra.instance.getCommandRegistry().unregister(script.getName(), command);
+    }
+
+    HandlerList.unregisterAll(listener);
+  }
+
+  private void handle(EventStub stub, Event event) {
+    if (active || !stub.eventClass().isInstance(event))
+      return;
+
+    long activationTime = System.nanoTime();
+
+    // Handlers registered while the event is being called do not receive it
+    if (activate())
+      Spectra.instance.getEventDispatcher().replay(event, script, stub.priority(), activationTime);
+  }
+
+  /**
+   * Loads and enables the script in place of its stubs. Returns whether the
+   * script is enabled.
+   */
+  public synchronized Boolean activate() {
+    if (active)
+      return true;
+
+    if (!installed)
+      return false;
+
+    unregisterStubs();
+
+    long startTime = System.nanoTime();
+
+    if (!script.enable()) {
+      plugin.getLogger().severe("Failed to activate script: " + script.getName());
+
+      script.disable();
+      registerStubs();
+
+      return false;
+    }
+
+    active = true;
+
+    plugin.getLogger().info("Activated script " + script.getName() + " in "
+        + (System.nanoTime() - startTime) / 1_000_000 + "ms");
+
+    return true;
+  }
+
+  /**
+   * Unloads the script once it has not been called for the idle timeout,
+   * unless it still has pending timers, workers or queued tasks
+   */
+  private synchronized void checkIdle() {
+    if (!active || script.getTaskCount() > 0)
+      return;
+
+    long idleTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - script.getLastInvokeTime());
+
+    if (idleTime < idleTimeout)
+      return;
+
+    script.disable();
+    registerStubs();
+
+    active = false;
+
+    plugin.getLogger().info("Unloaded idle script: " + script.getName());
+  }
+
+  public Boolean isInstalled() {
+    return installed;
+  }
+
+  public Boolean isActive() {
+    return active;
+  }
+
+  /**
+   * Removes the stubs, leaving the script to be disabled by its plugin
+   */
+  public synchronized void close() {
+    if (!installed)
+      return;
+
+    if (idleTask != null)
+      idleTask.cancel();
+
+    idleTask = null;
+
+    if (!active)
+      unregisterStubs();
+
+    installed = false;
+    active = false;
+  }
+}
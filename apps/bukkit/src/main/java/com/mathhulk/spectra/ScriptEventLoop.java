@@ -0,0 +1,174 @@
+package com.mathhulk.spectra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.polyglot.Value;
+
+/**
+ * The event loop of a script context. Macrotasks, such as timers and
+ * setImmediate callbacks, run one at a time, and the microtask queue is
+ * drained after each of them.
+ *
+ * Loops are drained on the main thread once per tick within a shared time
+ * budget. Work which does not fit is carried over to the next tick, and the
+ * loop to start with rotates so that no script is starved.
+ */
+public class ScriptEventLoop {
+  private static final long BUDGET_NANOS = TimeUnit.MILLISECONDS
+      .toNanos(Long.getLong("spectra.event-loop.budget", 10));
+
+  private static final List<ScriptEventLoop> loops = new CopyOnWriteArrayList<>();
+  private static int nextLoop = 0;
+
+  private final Script script;
+
+  private final Queue<Task> macrotasks = new ConcurrentLinkedQueue<>();
+  private final Queue<Value> microtasks = new ConcurrentLinkedQueue<>();
+
+  private volatile Boolean closed = false;
+
+  private record Task(String label, Runnable runnable) {
+  }
+
+  @FunctionalInterface
+  public interface QueueMicrotaskFunction {
+    void apply(Value callback);
+  }
+
+  @FunctionalInterface
+  public interface SetImmediateFunction {
+    void apply(Value callback);
+  }
+
+  public ScriptEventLoop(Script script) {
+    this.script = script;
+
+    loops.add(this);
+  }
+
+  public Script getScript() {
+    return script;
+  }
+
+  /**
+   * Queues a task to run on the main thread, from any thread
+   */
+  public void post(String label, Runnable runnable) {
+    if (closed)
+      return;
+
+    macrotasks.add(new Task(label, runnable));
+  }
+
+  public void queueMicrotask(Value callback) {
+    if (!callback.canExecute()) {
+      throw new IllegalArgumentException("Expected a function for queueMicrotask");
+    }
+
+    if (!closed)
+      microtasks.add(callback);
+  }
+
+  public void setImmediate(Value callback) {
+    if (!callback.canExecute()) {
+      throw new IllegalArgumentException("Expected a function for setImmediate");
+    }
+
+    post("immediate", callback::executeVoid);
+  }
+
+  public int getPendingTasks() {
+    return macrotasks.size() + microtasks.size();
+  }
+
+  public Boolean isIdle() {
+    return macrotasks.isEmpty() && microtasks.isEmpty();
+  }
+
+  /**
+   * Runs queued tasks until the loop is empty or the deadline has passed.
+   * Returns whether the loop was drained.
+   */
+  private Boolean drain(long deadline) {
+    if (!drainMicrotasks(deadline))
+      return false;
+
+    Task task;
+
+    while (!closed && System.nanoTime() < deadline && (task = macrotasks.poll()) != null) {
+      run(task.label(), task.runnable());
+
+      if (!drainMicrotasks(deadline))
+        return false;
+    }
+
+    return isIdle();
+  }
+
+  private Boolean drainMicrotasks(long deadline) {
+    Value microtask;
+
+    while (!closed && (microtask = microtasks.peek()) != null) {
+      if (System.nanoTime() >= deadline)
+        return false;
+
+      microtasks.poll();
+
+      run("microtask", microtask::executeVoid);
+    }
+
+    return true;
+  }
+
+  private void run(String label, Runnable runnable) {
+    try {
+      script.invoke(EntryPoint.TASK, label, runnable);
+    } catch (Exception e) {
+      script.getPlugin().getLogger().severe("Failed to run " + label + " in script: " + script.getName());
+
+      e.printStackTrace();
+    }
+  }
+
+  public void close() {
+    closed = true;
+
+    loops.remove(this);
+
+    macrotasks.clear();
+    microtasks.clear();
+  }
+
+  /**
+   * Drains the loops of every script within the per-tick budget
+   */
+  public static void drainAll() {
+    List<ScriptEventLoop> current = new ArrayList<>(loops);
+
+    if (current.isEmpty())
+      return;
+
+    long deadline = System.nanoTime() + BUDGET_NANOS;
+    int start = nextLoop % current.size();
+
+    for (int i = 0; i < current.size(); i++) {
+      ScriptEventLoop loop = current.get((start + i) % current.size());
+
+      if (loop.isIdle())
+        continue;
+
+      if (!loop.drain(deadline)) {
+        // Start with the loop which ran out of time on the next tick
+        nextLoop = (start + i) % current.size();
+        return;
+      }
+    }
+
+    nextLoop = start + 1;
+  }
+}
@@ -0,0 +1,265 @@
+package com.mathhulk.spectra;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+/**
+ * A module evaluated in its own context on a background thread, for work which
+ * should not run on the main thread.
+ *
+ * Messages are cloned as JSON, and ByteBuffers are copied unless they are
+ * listed to transfer, which hands them over without copying. Messages from the
+ * worker are delivered through the event loop of the script, so handlers
+ * always run on the main thread.
+ */
+public class ScriptWorker {
+  private final Script script;
+  private final File file;
+
+  private final ExecutorService executor;
+  private volatile Context context;
+
+  private volatile Value mainHandler;
+  private volatile Value workerHandler;
+
+  // JSON.parse of each side, as messages are received outside of any context
+  private volatile Value mainParse;
+  private volatile Value workerParse;
+
+  private volatile Boolean terminated = false;
+
+  /**
+   * A message between contexts. Values are never shared, only their JSON and
+   * the transferred buffers.
+   */
+  private record Message(String data, ByteBuffer buffer, List<ByteBuffer> transfer) {
+  }
+
+  @FunctionalInterface
+  public interface PostMessageFunction {
+    void apply(Value message, Value... transfer);
+  }
+
+  @FunctionalInterface
+  public interface OnMessageFunction {
+    void apply(Value callback);
+  }
+
+  ScriptWorker(Script script, File file) {
+    this.script = script;
+    this.file = file;
+
+    executor = Executors.newSingleThreadExecutor((runnable) -> {
+      Thread thread = new Thread(runnable, "Spectra Worker: " + script.getName() + " (" + file.getName() + ")");
+      thread.setDaemon(true);
+
+      return thread;
+    });
+
+    executor.execute(this::start);
+  }
+
+  private void start() {
+    try {
+      Context.Builder builder = Context.newBuilder(script.getLanguage())
+          .allowAllAccess(true)
+          .option("js.esm-eval-returns-exports", "true");
+
+      if (script.usesSharedEngine())
+        builder.engine(SharedEngine.getEngine());
+
+      context = builder.build();
+
+      workerParse = context.eval(script.getLanguage(), "JSON.parse");
+
+      Value bindings = context.getBindings(script.getLanguage());
+
+      bindings.putMember("isWorker", true);
+      bindings.putMember("postMessage", (PostMessageFunction) this::postFromWorker);
+      bindings.putMember("onMessage", (OnMessageFunction) (callback) -> workerHandler = callback);
+
+      context.eval(Source.newBuilder(script.getLanguage(), file).mimeType("application/javascript+module").build());
+    } catch (Exception e) {
+      if (terminated)
+        return;
+
+      script.getPlugin().getLogger().severe("Failed to start worker " + file.getName() + " in script: "
+          + script.getName());
+
+      e.printStackTrace();
+    } finally {
+      // A worker terminated while starting could not close its context yet
+      if (terminated && context != null)
+        context.close(true);
+    }
+  }
+
+  public String getName() {
+    return file.getName();
+  }
+
+  public Boolean isTerminated() {
+    return terminated;
+  }
+
+  /**
+   * Sets the handler of messages from the worker, which runs on the main thread
+   */
+  public void onMessage(Value callback) {
+    mainParse = callback.getContext().eval(script.getLanguage(), "JSON.parse");
+    mainHandler = callback;
+  }
+
+  /**
+   * Sends a message from the script to the worker
+   */
+  public void postMessage(Value message, Value... transfer) {
+    if (terminated)
+      return;
+
+    Message clone = clone(message, transfer);
+
+    executor.execute(() -> {
+      Value handler = workerHandler;
+
+      if (handler == null || terminated)
+        return;
+
+      try {
+        handler.executeVoid(receive(workerParse, clone));
+      } catch (Exception e) {
+        script.getPlugin().getLogger().severe("Failed to handle message in worker " + file.getName()
+            + " of script: " + script.getName());
+
+        e.printStackTrace();
+      }
+    });
+  }
+
+  private void postFromWorker(Value message, Value... transfer) {
+    if (terminated)
+      return;
+
+    Message clone = clone(message, transfer);
+
+    script.getEventLoop().post("worker " + file.getName(), () -> {
+      Value handler = mainHandler;
+
+      if (handler != null && !terminated)
+        handler.executeVoid(receive(mainParse, clone));
+    });
+  }
+
+  /**
+   * Serializes a message in the context of the sender, which is entered while
+   * it calls postMessage.
+   *
+   * Transferring a buffer detaches it from the sender, like an ArrayBuffer: the
+   * receiver gets a view of its content, and the sender's buffer is left with
+   * nothing remaining. Buffers which are not transferred are copied.
+   */
+  private Message clone(Value message, Value... transfer) {
+    List<ByteBuffer> buffers = new ArrayList<>();
+
+    if (transfer.length > 0 && !transfer[0].isNull()) {
+      for (long i = 0; i < transfer[0].getArraySize(); i++) {
+        Value buffer = transfer[0].getArrayElement(i);
+
+        if (!buffer.isHostObject() || !(buffer.asHostObject() instanceof ByteBuffer byteBuffer)) {
+          throw new IllegalArgumentException("Expected only ByteBuffers to transfer");
+        }
+
+        buffers.add(byteBuffer);
+      }
+    }
+
+    String data = null;
+    ByteBuffer messageBuffer = null;
+
+    if (message.isHostObject() && message.asHostObject() instanceof ByteBuffer buffer) {
+      messageBuffer = buffer;
+    } else {
+      Value json = message.getContext().getBindings(script.getLanguage()).getMember("JSON")
+          .invokeMember("stringify", message);
+
+      data = json.isNull() ? null : json.asString();
+    }
+
+    // Detached only once the message was serialized, so a failed post leaves the buffers intact
+    List<ByteBuffer> transferred = new ArrayList<>();
+    ByteBuffer messageView = null;
+
+    for (ByteBuffer buffer : buffers) {
+      ByteBuffer view = buffer.duplicate().order(buffer.order());
+
+      if (buffer == messageBuffer)
+        messageView = view;
+
+      buffer.position(0).limit(0);
+      transferred.add(view);
+    }
+
+    if (messageBuffer != null)
+      messageBuffer = messageView != null ? messageView : copy(messageBuffer);
+
+    return new Message(data, messageBuffer, List.copyOf(transferred));
+  }
+
+  private static ByteBuffer copy(ByteBuffer buffer) {
+    ByteBuffer copy = buffer.isDirect() ? ByteBuffer.allocateDirect(buffer.remaining())
+        : ByteBuffer.allocate(buffer.remaining());
+
+    copy.put(buffer.duplicate()).flip();
+
+    return copy.order(buffer.order());
+  }
+
+  /**
+   * Deserializes a message in the context of the receiver
+   */
+  private static Object receive(Value parse, Message message) {
+    Object data = message.buffer();
+
+    if (message.data() != null) {
+      data = parse.execute(message.data());
+    }
+
+    Map<String, Object> event = new HashMap<>();
+    event.put("data", data);
+    event.put("transfer", ProxyArray.fromList(new ArrayList<>(message.transfer())));
+
+    return ProxyObject.fromMap(event);
+  }
+
+  public void terminate() {
+    if (terminated)
+      return;
+
+    terminated = true;
+
+    executor.shutdownNow();
+
+    // Cancels anything still running in the worker
+    if (context != null)
+      context.close(true);
+
+    try {
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
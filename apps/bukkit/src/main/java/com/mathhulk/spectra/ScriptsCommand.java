@@ -47,6 +47,76 @@ public class ScriptsCommand implements CommandExecutor, TabCompleter {
       sender.sendMessage("Started watching for scripts.");
     }
 
+    if (firstArgument.equals("engine")) {
+      sender.sendMessage("Engine: " + SharedEngine.describe());
+    }
+
+    if (firstArgument.equals("budgets")) {
+      for (Script script : plugin.getScriptManager().getScripts()) {
+        sender.sendMessage(script.getName() + ": " + script.getBudget().describe());
+      }
+    }
+
+    if (firstArgument.equals("timers")) {
+      TimerWheel timerWheel = plugin.getTimerWheel();
+
+      sender.sendMessage("Timers: " + timerWheel.size() + " pending at tick " + timerWheel.getCurrentTick());
+
+      for (Script script : plugin.getScriptManager().getScripts()) {
+        ScriptEventLoop eventLoop = script.getEventLoop();
+
+        sender.sendMessage(script.getName() + ": " + script.getTaskCount() + " pending tasks ("
+            + (eventLoop == null ? 0 : eventLoop.getPendingTasks()) + " queued)");
+      }
+    }
+
+    if (firstArgument.equals("listeners")) {
+      for (EventSubscription subscription : plugin.getEventDispatcher().getSubscriptions()) {
+        long accepted = subscription.getAcceptedEvents();
+        long rejected = subscription.getRejectedEvents();
+        long total = accepted + rejected;
+
+        sender.sendMessage(subscription.getScript().getName() + ": " + subscription.getLabel() + " ("
+            + subscription.getPriority() + (subscription.isIgnoringCancelled() ? ", ignoring cancelled" : "") + ") "
+            + accepted + " accepted, " + rejected + " rejected ("
+            + (total == 0 ? 0 : rejected * 100 / total) + "%)"
+            + (subscription instanceof AsyncEventSubscription async ? ", " + async.getDroppedEvents() + " dropped"
+                : subscription instanceof BatchedEventSubscription batched
+                    ? ", " + batched.getDroppedEvents() + " dropped" : ""));
+      }
+    }
+
+    if (firstArgument.equals("profile")) {
+      if (arguments.length < 2) {
+        sender.sendMessage("Usage: /scripts profile <start|stop|report>");
+        return true;
+      }
+
+      String action = arguments[1];
+
+      if (action.equals("start")) {
+        if (!ScriptProfiler.start()) {
+          sender.sendMessage("Already profiling scripts.");
+          return true;
+        }
+
+        sender.sendMessage("Started profiling scripts.");
+      }
+
+      if (action.equals("stop")) {
+        if (!ScriptProfiler.stop()) {
+          sender.sendMessage("Not profiling scripts.");
+          return true;
+        }
+
+        sender.sendMessage("Stopped profiling scripts.");
+      }
+
+      if (action.equals("report")) {
+        ScriptProfiler.report(10).forEach((line) -> sender.sendMessage(line));
+      }
+    }
+
     if (firstArgument.equals("list")) {
       ArrayList<Script> scripts = plugin.getScriptManager().getScripts();
 
@@ -94,6 +164,22 @@ public class ScriptsCommand implements CommandExecutor, TabCompleter {
       sender.sendMessage("Disabled script: " + scriptName);
     }
 
+    if (firstArgument.equals("reload")) {
+      if (arguments.length < 2) {
+        sender.sendMessage("Usage: /scripts reload <script>");
+        return true;
+      }
+
+      String scriptName = arguments[1];
+
+      if (!plugin.getScriptManager().reloadScript(scriptName)) {
+        sender.sendMessage("Failed to reload script: " + scriptName);
+        return true;
+      }
+
+      sender.sendMessage("Reloading script: " + scriptName);
+    }
+
     if (firstArgument.equals("remove")) {
       if (arguments.length < 2) {
         sender.sendMessage("Usage: /scripts remove <script>");
@@ -154,10 +240,11 @@ public class ScriptsCommand implements CommandExecutor, TabCompleter {
   @Override
   public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
     if (args.length == 1) {
-      return List.of("start-watching", "stop-watching", "list", "enable", "disable", "remove", "add");
+      return List.of("start-watching", "stop-watching", "list", "enable", "disable", "reload", "remove",
+          "add", "engine", "budgets", "listeners", "timers", "profile");
     }
 
-    if (args.length == 2 && List.of("enable", "disable", "remove", "add").contains(args[0])) {
+    if (args.length == 2 && List.of("enable", "disable", "reload", "remove", "add").contains(args[0])) {
       ArrayList<Script> scripts = plugin.getScriptManager().getScripts();
 
       ArrayList<String> scriptNames = new ArrayList<>();
@@ -166,6 +253,10 @@ public class ScriptsCommand implements CommandExecutor, TabCompleter {
       return scriptNames;
     }
 
+    if (args.length == 2 && args[0].equals("profile")) {
+      return List.of("start", "stop", "report");
+    }
+
     return new ArrayList<>();
   }
 }
@@ -1,11 +1,14 @@
 package com.mathhulk.spectra;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.bukkit.command.PluginCommand;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 
 import com.mathhulk.spectra.plugin.ScriptPlugin;
 import com.mathhulk.spectra.plugin.ScriptPluginLoader;
@@ -13,6 +16,10 @@ import com.mathhulk.spectra.plugin.ScriptPluginLoader;
 public class Spectra extends JavaPlugin {
   private ScriptManager scriptManager;
   private ScriptPluginLoader pluginLoader;
+  private EventDispatcher eventDispatcher;
+  private final TimerWheel timerWheel = new TimerWheel();
+  private final CommandRegistry commandRegistry = new CommandRegistry(this);
+  private BukkitTask tickTask;
 
   public static Spectra instance;
 
@@ -21,21 +28,33 @@ public class Spectra extends JavaPlugin {
     // Register ScriptPluginLoader
     instance = this;
 
+    eventDispatcher = new EventDispatcher();
+
     PluginManager pluginManager = getServer().getPluginManager();
     pluginManager.registerInterface(ScriptPluginLoader.class);
 
+    // Create the shared engine and report whether scripts will be compiled
+    SharedEngine.logRuntime(getLogger());
+
     // Load Spectra plugins
     getLogger().info("Loading Spectra plugins...");
 
-    File[] plugins = getDataFolder().getParentFile().listFiles();
+    File[] files = getDataFolder().getParentFile().listFiles();
 
-    if (plugins == null)
+    if (files == null)
       return;
 
-    for (File file : plugins) {
-      if (!ScriptPluginLoader.isSpectraPluginFile(file.getName()))
-        continue;
+    List<File> plugins = new ArrayList<>();
 
+    for (File file : files) {
+      if (ScriptPluginLoader.isSpectraPluginFile(file.getName()))
+        plugins.add(file);
+    }
+
+    plugins.sort(null);
+
+    // Dependencies declared in the headers of plugins are loaded first
+    for (File file : ScriptPluginLoader.sortPluginFiles(plugins, getLogger())) {
       try {
         Plugin loadedPlugin = pluginManager.loadPlugin(file);
 
@@ -70,6 +89,12 @@ public class Spectra extends JavaPlugin {
 
   @Override
   public void onEnable() {
+    // Register listeners subscribed while loading
+    eventDispatcher.bind();
+
+    // Drive the timers of every script from a single task
+    tickTask = getServer().getScheduler().runTaskTimer(this, this::tick, 1, 1);
+
     // Register the command
     PluginCommand command = getCommand("scripts");
 
@@ -98,10 +123,45 @@ public class Spectra extends JavaPlugin {
 
   @Override
   public void onDisable() {
-    if (scriptManager == null)
-      return;
+    if (scriptManager != null)
+      scriptManager.disable();
+
+    // Unregister the commands of disabled scripts
+    commandRegistry.flush();
+
+    eventDispatcher.unbind(this);
+
+    if (tickTask != null)
+      tickTask.cancel();
+
+    tickTask = null;
+
+    SharedEngine.close();
+  }
+
+  private void tick() {
+    timerWheel.tick();
+
+    // Run the queued tasks of scripts, carrying over what does not fit
+    ScriptEventLoop.drainAll();
+
+    // Deliver the events batched during the tick
+    BatchedEventSubscription.flushAll();
+
+    // Register the commands changed during the tick with a single sync
+    commandRegistry.flush();
+  }
+
+  public CommandRegistry getCommandRegistry() {
+    return commandRegistry;
+  }
+
+  public TimerWheel getTimerWheel() {
+    return timerWheel;
+  }
 
-    scriptManager.disable();
+  public EventDispatcher getEventDispatcher() {
+    return eventDispatcher;
   }
 
   public ScriptManager getScriptManager() {
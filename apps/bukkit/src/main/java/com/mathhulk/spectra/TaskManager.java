@@ -1,15 +1,12 @@
 package com.mathhulk.spectra;
 
-import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitTask;
-
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TaskManager {
-  private static final int TICKS_PER_SECOND = 20;
-
   private Long taskId = 0L;
-  private final HashMap<Long, BukkitTask> tasks = new HashMap<>();
+  private final Map<Long, TimerWheel.Timer> tasks = new ConcurrentHashMap<>();
 
   private final Script script;
 
@@ -41,49 +38,58 @@ public class TaskManager {
     void apply(long id);
   }
 
+  private synchronized long nextTaskId() {
+    return taskId++;
+  }
+
   public long setInterval(Runnable runnable, long delay) {
-    long ticks = delay / 1000 * TICKS_PER_SECOND;
+    long id = nextTaskId();
 
-    Plugin plugin = script.getPlugin();
-    BukkitTask task = plugin.getServer().getScheduler().runTaskTimer(plugin, runnable, ticks, ticks);
-    tasks.put(taskId, task);
+    // Delays are kept in milliseconds and rounded to ticks by the timer wheel
+    tasks.put(id, Spectra.instance.getTimerWheel().schedule(script, "interval #" + id, runnable, delay, delay));
 
-    return taskId++;
+    return id;
   }
 
   public void clearInterval(long id) {
-    BukkitTask task = tasks.get(id);
+    TimerWheel.Timer task = tasks.remove(id);
 
     if (task == null) {
       return;
     }
 
-    task.cancel();
+    Spectra.instance.getTimerWheel().cancel(task);
   }
 
   public long setTimeout(Runnable runnable, long delay) {
-    long ticks = delay / 1000 * TICKS_PER_SECOND;
+    long id = nextTaskId();
 
-    Plugin plugin = script.getPlugin();
-    BukkitTask task = plugin.getServer().getScheduler().runTaskLater(plugin, runnable, ticks);
-    tasks.put(taskId, task);
+    Runnable timeout = () -> {
+      tasks.remove(id);
 
-    return taskId++;
+      runnable.run();
+    };
+
+    tasks.put(id, Spectra.instance.getTimerWheel().schedule(script, "timeout #" + id, timeout, delay, -1));
+
+    return id;
   }
 
   public void clearTimeout(long id) {
-    BukkitTask task = tasks.get(id);
-
-    if (task == null) {
-      return;
-    }
+    clearInterval(id);
+  }
 
-    task.cancel();
+  public int getTaskCount() {
+    return tasks.size();
   }
 
   public void removeTasks() {
-    for (BukkitTask task : tasks.values()) {
-      task.cancel();
+    TimerWheel timerWheel = Spectra.instance.getTimerWheel();
+
+    for (TimerWheel.Timer task : new ArrayList<>(tasks.values())) {
+      timerWheel.cancel(task);
     }
+
+    tasks.clear();
   }
 }
@@ -0,0 +1,268 @@
+package com.mathhulk.spectra;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel shared by the timers of every script, advanced
+ * by a single scheduler task once per tick.
+ *
+ * Deadlines are kept in milliseconds and only rounded to a tick when a timer is
+ * placed in the wheel, so intervals which are not a multiple of a tick do not
+ * drift. Scheduling and cancelling are constant time.
+ */
+public class TimerWheel {
+  public static final long MILLISECONDS_PER_TICK = 50;
+
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  private static final int LEVELS = 4;
+
+  private final Timer[][] wheel = new Timer[LEVELS][SLOTS];
+
+  // Timers beyond the last level are kept aside and placed as the wheel turns
+  private final List<Timer> overflow = new ArrayList<>();
+
+  private long currentTick = 0;
+  private int size = 0;
+
+  /**
+   * A scheduled callback. Timers are linked into the slot they are due in, so
+   * they can be unlinked without searching.
+   */
+  public static class Timer {
+    private final Script script;
+    private final String label;
+    private final Runnable runnable;
+    private final long period;
+
+    private long deadline;
+    private long tick;
+
+    private Timer previous;
+    private Timer next;
+    private int level = -1;
+    private int slot;
+
+    private volatile Boolean cancelled = false;
+    private Boolean done = false;
+    private volatile Boolean queued = false;
+
+    private Timer(Script script, String label, Runnable runnable, long deadline, long period) {
+      this.script = script;
+      this.label = label;
+      this.runnable = runnable;
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    public Script getScript() {
+      return script;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+
+    public Boolean isRepeating() {
+      return period >= 0;
+    }
+
+    public Boolean isCancelled() {
+      return cancelled;
+    }
+  }
+
+  public synchronized Timer schedule(Script script, String label, Runnable runnable, long delay, long period) {
+    Timer timer = new Timer(script, label, runnable, currentTick * MILLISECONDS_PER_TICK + Math.max(delay, 0),
+        period < 0 ? -1 : Math.max(period, 0));
+
+    place(timer);
+    size++;
+
+    return timer;
+  }
+
+  public synchronized void cancel(Timer timer) {
+    if (timer.cancelled)
+      return;
+
+    timer.cancelled = true;
+
+    if (timer.done)
+      return;
+
+    unlink(timer);
+    size--;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public synchronized long getCurrentTick() {
+    return currentTick;
+  }
+
+  /**
+   * Advances the wheel by one tick and queues every timer which is due on the
+   * event loop of its script
+   */
+  public void tick() {
+    List<Timer> due = advance();
+
+    for (Timer timer : due) {
+      if (timer.cancelled)
+        continue;
+
+      // An interval which has not run since it was last queued is skipped, so
+      // a loop which is behind does not pile up runs of the same interval
+      if (!timer.queued) {
+        timer.queued = true;
+
+        // A timer may be cancelled after it is queued, but before it runs
+        timer.script.getEventLoop().post(timer.label, () -> {
+          timer.queued = false;
+
+          if (!timer.cancelled)
+            timer.runnable.run();
+        });
+      }
+
+      synchronized (this) {
+        if (timer.cancelled)
+          continue;
+
+        if (!timer.isRepeating()) {
+          timer.done = true;
+          size--;
+
+          continue;
+        }
+
+        timer.deadline += timer.period;
+
+        place(timer);
+      }
+    }
+  }
+
+  private synchronized List<Timer> advance() {
+    currentTick++;
+
+    // Move timers from the higher levels down as their slot comes into range
+    for (int level = 1; level < LEVELS; level++) {
+      if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0)
+        break;
+
+      cascade(level, (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK));
+
+      if (level == LEVELS - 1) {
+        List<Timer> pending = new ArrayList<>(overflow);
+        overflow.clear();
+
+        for (Timer timer : pending) {
+          timer.level = -1;
+          insert(timer);
+        }
+      }
+    }
+
+    List<Timer> due = new ArrayList<>();
+    int slot = (int) (currentTick & SLOT_MASK);
+
+    Timer timer = wheel[0][slot];
+    wheel[0][slot] = null;
+
+    while (timer != null) {
+      Timer next = timer.next;
+
+      timer.previous = null;
+      timer.next = null;
+      timer.level = -1;
+
+      due.add(timer);
+
+      timer = next;
+    }
+
+    return due;
+  }
+
+  private void cascade(int level, int slot) {
+    Timer timer = wheel[level][slot];
+    wheel[level][slot] = null;
+
+    while (timer != null) {
+      Timer next = timer.next;
+
+      timer.previous = null;
+      timer.next = null;
+      timer.level = -1;
+
+      insert(timer);
+
+      timer = next;
+    }
+  }
+
+  private void place(Timer timer) {
+    // Round up, so a timer never fires before its deadline, and run no sooner
+    // than the next tick
+    timer.tick = Math.max(currentTick + 1, Math.ceilDiv(timer.deadline, MILLISECONDS_PER_TICK));
+
+    insert(timer);
+  }
+
+  /**
+   * Links a timer into the level which covers the ticks until it is due. A
+   * timer cascaded on the tick it is due lands in the slot about to run.
+   */
+  private void insert(Timer timer) {
+    long ticks = timer.tick - currentTick;
+
+    for (int level = 0; level < LEVELS; level++) {
+      if (ticks < 1L << (SLOT_BITS * (level + 1))) {
+        link(timer, level, (int) ((timer.tick >>> (SLOT_BITS * level)) & SLOT_MASK));
+        return;
+      }
+    }
+
+    timer.level = LEVELS;
+    overflow.add(timer);
+  }
+
+  private void link(Timer timer, int level, int slot) {
+    Timer head = wheel[level][slot];
+
+    timer.level = level;
+    timer.slot = slot;
+    timer.previous = null;
+    timer.next = head;
+
+    if (head != null)
+      head.previous = timer;
+
+    wheel[level][slot] = timer;
+  }
+
+  private void unlink(Timer timer) {
+    if (timer.level == LEVELS) {
+      overflow.remove(timer);
+    } else if (timer.level >= 0) {
+      if (timer.previous != null) {
+        timer.previous.next = timer.next;
+      } else {
+        wheel[timer.level][timer.slot] = timer.next;
+      }
+
+      if (timer.next != null)
+        timer.next.previous = timer.previous;
+    }
+
+    timer.previous = null;
+    timer.next = null;
+    timer.level = -1;
+  }
+}
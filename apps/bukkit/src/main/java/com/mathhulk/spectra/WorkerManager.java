@@ -0,0 +1,53 @@
+package com.mathhulk.spectra;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class WorkerManager {
+  private final Script script;
+
+  private final List<ScriptWorker> workers = new CopyOnWriteArrayList<>();
+
+  WorkerManager(Script script) {
+    this.script = script;
+  }
+
+  public Script getScript() {
+    return script;
+  }
+
+  @FunctionalInterface
+  public interface CreateWorkerFunction {
+    ScriptWorker apply(String path);
+  }
+
+  /**
+   * Starts a worker from the script itself or a module next to it
+   */
+  public ScriptWorker createWorker(String path) {
+    File file = script.resolveModule(path);
+
+    ScriptWorker worker = new ScriptWorker(script, file);
+    workers.add(worker);
+
+    script.getPlugin().getLogger().info("Started worker: " + file.getName());
+
+    return worker;
+  }
+
+  public int getWorkerCount() {
+    workers.removeIf(ScriptWorker::isTerminated);
+
+    return workers.size();
+  }
+
+  public void removeWorkers() {
+    for (ScriptWorker worker : new ArrayList<>(workers)) {
+      worker.terminate();
+    }
+
+    workers.clear();
+  }
+}
@@ -15,20 +15,24 @@ import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.PluginLogger;
 
 import com.mathhulk.spectra.Script;
+import com.mathhulk.spectra.ScriptActivator;
 import com.mathhulk.spectra.Spectra;
 
 public class ScriptPlugin implements Plugin {
   private Script script;
+  private ScriptActivator activator;
 
   private final ScriptPluginLoader loader;
+  private final PluginDescriptionFile description;
   private final PluginLogger logger;
   private final Server server;
 
   private boolean naggable = true;
 
-  public ScriptPlugin(ScriptPluginLoader loader, Server server) {
+  public ScriptPlugin(ScriptPluginLoader loader, Server server, PluginDescriptionFile description) {
     this.loader = loader;
     this.server = server;
+    this.description = description;
 
     logger = new PluginLogger(this);
   }
@@ -40,32 +44,56 @@ public class ScriptPlugin implements Plugin {
 
   @Override
   public void onEnable() {
+    // Lazy scripts are loaded by their stubs
+    if (activator != null) {
+      activator.install();
+
+      return;
+    }
+
     script.enable();
+
+    // Register listeners added while loading, before this plugin was enabled
+    Spectra.instance.getEventDispatcher().bind();
   }
 
   @Override
   public void onDisable() {
+    if (activator != null)
+      activator.close();
+
     script.disable();
+
+    Spectra.instance.getEventDispatcher().unbind(this);
   }
 
   public void setScript(Script script) {
     this.script = script;
   }
 
+  public void setActivator(ScriptActivator activator) {
+    this.activator = activator;
+  }
+
+  public ScriptActivator getActivator() {
+    return activator;
+  }
+
   @Override
   public String getName() {
-    return script.getName();
+    return description.getName();
   }
 
   @Override
   public void onLoad() {
     // TODO: Implement
-    script.enable();
+    if (activator == null)
+      script.enable();
   }
 
   @Override
   public boolean isEnabled() {
-    return script.isEnabled();
+    return activator != null ? activator.isInstalled() : script.isEnabled();
   }
 
   @Override
@@ -112,7 +140,7 @@ public class ScriptPlugin implements Plugin {
 
   @Override
   public PluginDescriptionFile getDescription() {
-    return new PluginDescriptionFile("Test", "1.0.0", "com.mathhulk.spectra.SpectraPlugin");
+    return description;
   }
 
   @Override
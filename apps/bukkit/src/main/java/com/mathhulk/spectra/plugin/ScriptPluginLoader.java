@@ -1,20 +1,32 @@
 package com.mathhulk.spectra.plugin;
 
 import java.io.File;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 import org.bukkit.Server;
 import org.bukkit.event.Event;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.InvalidPluginException;
 import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.PluginLoader;
 import org.bukkit.plugin.RegisteredListener;
+import org.yaml.snakeyaml.Yaml;
 
 import com.mathhulk.spectra.Script;
+import com.mathhulk.spectra.ScriptActivator;
+import com.mathhulk.spectra.ScriptHash;
+import com.mathhulk.spectra.ScriptHeader;
 import com.mathhulk.spectra.Spectra;
 
 public class ScriptPluginLoader implements PluginLoader {
@@ -23,28 +35,207 @@ public class ScriptPluginLoader implements PluginLoader {
       Pattern.compile(".*\\.mjs$")
   };
 
+  private static final String MAIN_CLASS = ScriptPlugin.class.getName();
+
+  private static final Pattern INVALID_NAME_CHARACTERS = Pattern.compile("[^A-Za-z0-9_.-]");
+
+  // Descriptions by file path, with the hash of the content they were read from, as names default to the file name
+  private static final Map<String, CachedDescription> descriptions = new ConcurrentHashMap<>();
+
   private final ArrayList<ScriptPlugin> plugins = new ArrayList<>();
 
   private final Server server;
 
+  private record CachedDescription(String hash, PluginDescriptionFile description) {
+  }
+
   public ScriptPluginLoader(Server server) {
     this.server = server;
   }
 
   @Override
-  public Plugin loadPlugin(File file) {
-    ScriptPlugin plugin = new ScriptPlugin(this, server);
+  public Plugin loadPlugin(File file) throws InvalidPluginException {
+    PluginDescriptionFile description;
+
+    try {
+      description = getPluginDescription(file);
+    } catch (InvalidDescriptionException e) {
+      throw new InvalidPluginException(e);
+    }
+
+    ScriptPlugin plugin = new ScriptPlugin(this, server, description);
     Script script = new Script(file, plugin);
 
     plugin.setScript(script);
+
+    if (ScriptActivator.isLazy(script.getHeader()))
+      plugin.setActivator(new ScriptActivator(plugin, script));
     plugins.add(plugin);
 
     return plugin;
   }
 
   @Override
-  public PluginDescriptionFile getPluginDescription(File file) {
-    return new PluginDescriptionFile("Test", "1.0.0", "com.mathhulk.spectra.ScriptPlugin");
+  public PluginDescriptionFile getPluginDescription(File file) throws InvalidDescriptionException {
+    return readDescription(file);
+  }
+
+  /**
+   * Builds the description of a script plugin from its header, e.g.
+   * <code>// @name Warps</code>, <code>// @version 1.2.0</code>,
+   * <code>// @depend Vault, Essentials</code>, <code>// @softdepend</code>,
+   * <code>// @loadbefore</code> and <code>// @load STARTUP</code>, without
+   * evaluating the script
+   */
+  public static PluginDescriptionFile readDescription(File file) throws InvalidDescriptionException {
+    String hash;
+
+    try {
+      hash = ScriptHash.of(file);
+    } catch (Exception e) {
+      throw new InvalidDescriptionException(e, "Failed to read " + file.getName());
+    }
+
+    String path = file.getAbsolutePath();
+    CachedDescription cachedDescription = descriptions.get(path);
+
+    if (cachedDescription != null && cachedDescription.hash().equals(hash))
+      return cachedDescription.description();
+
+    ScriptHeader header = ScriptHeader.read(file);
+
+    String fileName = file.getName();
+    String defaultName = fileName.substring(0, fileName.lastIndexOf("."));
+
+    Map<String, Object> values = new LinkedHashMap<>();
+
+    values.put("name", INVALID_NAME_CHARACTERS.matcher(header.get("name", defaultName)).replaceAll("_"));
+    values.put("version", header.get("version", "1.0.0"));
+    values.put("main", MAIN_CLASS);
+    values.put("load", header.get("load", "POSTWORLD").toUpperCase());
+    values.put("depend", getNames(header, "depend"));
+    values.put("softdepend", getNames(header, "softdepend"));
+    values.put("loadbefore", getNames(header, "loadbefore"));
+
+    String descriptionText = header.get("description");
+
+    if (descriptionText != null)
+      values.put("description", descriptionText);
+
+    List<String> authors = getNames(header, "author");
+
+    if (!authors.isEmpty())
+      values.put("authors", authors);
+
+    // Parsed the same way as a plugin.yml, so invalid values are rejected alike
+    PluginDescriptionFile description = new PluginDescriptionFile(new StringReader(new Yaml().dump(values)));
+
+    descriptions.put(path, new CachedDescription(hash, description));
+
+    return description;
+  }
+
+  /**
+   * Gets the names listed by repeated directives, separated by commas or spaces
+   */
+  private static List<String> getNames(ScriptHeader header, String key) {
+    List<String> names = new ArrayList<>();
+
+    for (String value : header.getAll(key)) {
+      for (String name : value.split("[,\\s]+")) {
+        if (!name.isEmpty())
+          names.add(name);
+      }
+    }
+
+    return names;
+  }
+
+  /**
+   * Orders script plugin files so dependencies are loaded first, keeping the
+   * order of the files otherwise. Plugins in a cycle, or whose description is
+   * invalid, are loaded last.
+   */
+  public static List<File> sortPluginFiles(List<File> files, Logger logger) {
+    Map<String, File> filesByName = new LinkedHashMap<>();
+    Map<String, PluginDescriptionFile> descriptionsByName = new LinkedHashMap<>();
+    List<File> invalidFiles = new ArrayList<>();
+
+    for (File file : files) {
+      try {
+        PluginDescriptionFile description = readDescription(file);
+
+        if (filesByName.containsKey(description.getName())) {
+          logger.severe("Ambiguous plugin name " + description.getName() + " in " + file.getName() + " and "
+              + filesByName.get(description.getName()).getName());
+
+          invalidFiles.add(file);
+          continue;
+        }
+
+        filesByName.put(description.getName(), file);
+        descriptionsByName.put(description.getName(), description);
+      } catch (InvalidDescriptionException e) {
+        logger.severe("Invalid description in " + file.getName());
+
+        e.printStackTrace();
+
+        invalidFiles.add(file);
+      }
+    }
+
+    // Plugins which must be loaded before each plugin
+    Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+
+    for (PluginDescriptionFile description : descriptionsByName.values()) {
+      Set<String> before = dependencies.computeIfAbsent(description.getName(), (_) -> new HashSet<>());
+
+      for (String name : description.getDepend()) {
+        if (filesByName.containsKey(name))
+          before.add(name);
+      }
+
+      for (String name : description.getSoftDepend()) {
+        if (filesByName.containsKey(name))
+          before.add(name);
+      }
+
+      for (String name : description.getLoadBefore()) {
+        if (filesByName.containsKey(name))
+          dependencies.computeIfAbsent(name, (_) -> new HashSet<>()).add(description.getName());
+      }
+    }
+
+    List<File> sortedFiles = new ArrayList<>();
+    Set<String> loadedNames = new HashSet<>();
+    Boolean progressed = true;
+
+    while (progressed) {
+      progressed = false;
+
+      for (String name : descriptionsByName.keySet()) {
+        if (loadedNames.contains(name) || !loadedNames.containsAll(dependencies.get(name)))
+          continue;
+
+        sortedFiles.add(filesByName.get(name));
+        loadedNames.add(name);
+
+        progressed = true;
+      }
+    }
+
+    for (String name : descriptionsByName.keySet()) {
+      if (loadedNames.contains(name))
+        continue;
+
+      logger.warning("Circular dependency for " + name + ", loading it last");
+
+      sortedFiles.add(filesByName.get(name));
+    }
+
+    sortedFiles.addAll(invalidFiles);
+
+    return sortedFiles;
   }
 
   public static boolean isSpectraPluginFile(String fileName) {
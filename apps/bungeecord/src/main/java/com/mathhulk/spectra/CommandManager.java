@@ -3,8 +3,12 @@ package com.mathhulk.spectra;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.chat.TextComponent;
 import net.md_5.bungee.api.plugin.Command;
 import net.md_5.bungee.api.plugin.TabExecutor;
 
@@ -18,13 +22,13 @@ public class CommandManager {
   }
 
   public void removeCommands() {
-    for (Command command : commands) {
+    for (Command command : new ArrayList<>(commands)) {
       removeCommand(command);
     }
   }
 
   public void removeCommand(Command command) {
-    if (!commands.contains(command)) {
+    if (!commands.remove(command)) {
       return;
     }
 
@@ -39,39 +43,82 @@ public class CommandManager {
     }
   }
 
-  public void addCommand(String name, ExecutorFunction executor, TabCompleterFunction... optionalParameters) {
+  public Command addCommand(Value options, ExecutorFunction executor, TabCompleterFunction... optionalParameters) {
     if (optionalParameters.length > 1) {
       throw new IllegalArgumentException("Expected at most 3 arguments but found " + (optionalParameters.length + 2));
     }
 
-    if (optionalParameters.length == 0) {
-      registerCommand(name, executor, null);
+    TabCompleterFunction tabCompleter = optionalParameters.length == 0 ? null : optionalParameters[0];
 
-      return;
+    if (options.isString()) {
+      return registerCommand(options.asString(), null, new String[0], null, executor, tabCompleter);
+    }
+
+    Value name = options.getMember("name");
+
+    if (name == null || name.isNull()) {
+      throw new IllegalArgumentException("Expected name but found null");
     }
 
-    registerCommand(name, executor, optionalParameters[0]);
+    Value permission = options.getMember("permission");
+    Value aliases = options.getMember("aliases");
+    Value arguments = options.getMember("arguments");
+
+    ArrayList<String> parsedAliases = new ArrayList<>();
+
+    if (aliases != null && aliases.hasArrayElements()) {
+      for (long i = 0; i < aliases.getArraySize(); i++) {
+        parsedAliases.add(aliases.getArrayElement(i).asString());
+      }
+    }
+
+    return registerCommand(name.asString(), permission == null || permission.isNull() ? null : permission.asString(),
+        parsedAliases.toArray(new String[0]),
+        arguments == null || arguments.isNull() ? null : ArgumentSchema.parse(arguments), executor, tabCompleter);
   }
 
-  private void registerCommand(String name, ExecutorFunction executor, TabCompleterFunction tabCompleter) {
+  private Command registerCommand(String name, String permission, String[] aliases, ArgumentSchema schema,
+      ExecutorFunction executor, TabCompleterFunction tabCompleter) {
     try {
       class ScriptCommand extends Command implements TabExecutor {
         public ScriptCommand(String name) {
-          super(name);
+          super(name, permission, aliases);
         }
 
         @Override
         public void execute(CommandSender sender, String[] args) {
-          executor.apply(sender, args);
+          ProxyObject values = null;
+
+          // Arguments are validated before the script is called
+          if (schema != null) {
+            try {
+              values = schema.resolve(args);
+            } catch (ArgumentSchema.ArgumentException e) {
+              sender.sendMessage(new TextComponent(e.getMessage()));
+              sender.sendMessage(new TextComponent("Usage: " + schema.getUsage(name)));
+
+              return;
+            }
+          }
+
+          ProxyObject resolvedValues = values;
+
+          // Commands do not wait for the script, which runs them in order
+          Boolean posted = script.getActor().tell("/" + name,
+              () -> script.invoke(EntryPoint.COMMAND, "/" + name, () -> executor.apply(sender, args, resolvedValues)));
+
+          if (!posted)
+            sender.sendMessage(new TextComponent("The script is busy, try again later."));
         }
 
         @Override
         public List<String> onTabComplete(CommandSender sender, String[] args) {
           if (tabCompleter == null) {
-            return new ArrayList<>();
+            return schema == null ? new ArrayList<>() : schema.complete(args);
           }
 
-          return tabCompleter.apply(sender, args);
+          return script.getActor().call("/" + name + " (tab)", () -> script.invoke(EntryPoint.COMMAND,
+              "/" + name + " (tab)", () -> tabCompleter.apply(sender, args), new ArrayList<>()), new ArrayList<>());
         }
       }
 
@@ -79,11 +126,17 @@ public class CommandManager {
 
       ProxyServer.getInstance().getPluginManager().registerCommand(script.getPlugin(), command);
 
+      commands.add(command);
+
       script.getPlugin().getLogger().info("Added command: " + name);
+
+      return command;
     } catch (Exception e) {
       script.getPlugin().getLogger().severe("Failed to add command: " + name);
 
       e.printStackTrace();
+
+      return null;
     }
   }
 
@@ -93,7 +146,7 @@ public class CommandManager {
 
   @FunctionalInterface
   public interface ExecutorFunction {
-    boolean apply(CommandSender sender, String[] args);
+    boolean apply(CommandSender sender, String[] args, ProxyObject values);
   }
 
   @FunctionalInterface
@@ -108,6 +161,6 @@ public class CommandManager {
 
   @FunctionalInterface
   public interface AddCommandFunction {
-    void apply(String name, ExecutorFunction executor, TabCompleterFunction... tabCompleter);
+    Command apply(Value options, ExecutorFunction executor, TabCompleterFunction... tabCompleter);
   }
 }
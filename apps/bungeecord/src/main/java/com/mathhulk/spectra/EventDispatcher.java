@@ -0,0 +1,250 @@
+package com.mathhulk.spectra;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+import org.graalvm.polyglot.Value;
+
+import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.plugin.Event;
+import net.md_5.bungee.api.plugin.Listener;
+import net.md_5.bungee.api.plugin.Plugin;
+import net.md_5.bungee.api.plugin.PluginManager;
+import net.md_5.bungee.event.EventBus;
+
+/**
+ * Binds one handler per exact event class and priority in the BungeeCord
+ * event bus, so scripts are only called for the events they subscribed to.
+ *
+ * Handlers are added to the event bus through reflection. If its internals
+ * cannot be resolved, each handler is instead registered as an
+ * ExactEventListener through the plugin manager.
+ */
+public class EventDispatcher {
+  private static final EventSubscription[] NO_SUBSCRIPTIONS = new EventSubscription[0];
+
+  private final Plugin plugin;
+
+  private final Map<Key, Slot> slots = new ConcurrentHashMap<>();
+
+  private Boolean fallback = false;
+
+  private EventBus eventBus;
+  private Map<Class<?>, Map<Byte, Map<Object, Method[]>>> byListenerAndPriority;
+  private Lock lock;
+  private Method bakeHandlersMethod;
+  private Method dispatchMethod;
+
+  private record Key(Class<? extends Event> eventClass, Byte priority) {
+  }
+
+  /**
+   * The event bus handler for an event class and priority. Subscriptions are
+   * kept in a copy-on-write array, so dispatching never locks.
+   */
+  private static class Slot implements Listener {
+    private final Key key;
+
+    private volatile EventSubscription[] subscriptions = NO_SUBSCRIPTIONS;
+
+    // The listener registered through the plugin manager, if any
+    private Listener listener;
+
+    private Slot(Key key) {
+      this.key = key;
+    }
+
+    private synchronized void add(EventSubscription subscription) {
+      EventSubscription[] current = subscriptions;
+      EventSubscription[] next = Arrays.copyOf(current, current.length + 1);
+      next[current.length] = subscription;
+
+      subscriptions = next;
+    }
+
+    private synchronized Boolean remove(EventSubscription subscription) {
+      EventSubscription[] current = subscriptions;
+
+      int index = Arrays.asList(current).indexOf(subscription);
+
+      if (index == -1)
+        return false;
+
+      EventSubscription[] next = new EventSubscription[current.length - 1];
+      System.arraycopy(current, 0, next, 0, index);
+      System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+
+      subscriptions = next;
+
+      return true;
+    }
+
+    private Boolean isEmpty() {
+      return subscriptions.length == 0;
+    }
+
+    private void dispatch(Event event) {
+      for (EventSubscription subscription : subscriptions) {
+        subscription.dispatch(event);
+      }
+    }
+  }
+
+  public EventDispatcher(Plugin plugin) {
+    this.plugin = plugin;
+  }
+
+  /**
+   * Gets the event bus internals using reflection, returning whether they
+   * could be resolved
+   */
+  private synchronized Boolean resolveEventBus() {
+    if (eventBus != null)
+      return true;
+
+    if (fallback)
+      return false;
+
+    try {
+      resolveEventBusFields();
+
+      return true;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      fallback = true;
+
+      plugin.getLogger().warning("Failed to access the event bus, registering script listeners instead");
+
+      e.printStackTrace();
+
+      return false;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void resolveEventBusFields() throws ReflectiveOperationException {
+    PluginManager pluginManager = ProxyServer.getInstance().getPluginManager();
+
+    Field eventBusField = PluginManager.class.getDeclaredField("eventBus");
+    eventBusField.setAccessible(true);
+    EventBus resolvedEventBus = (EventBus) eventBusField.get(pluginManager);
+
+    Field byListenerAndPriorityField = EventBus.class.getDeclaredField("byListenerAndPriority");
+    byListenerAndPriorityField.setAccessible(true);
+    byListenerAndPriority = (Map<Class<?>, Map<Byte, Map<Object, Method[]>>>) byListenerAndPriorityField
+        .get(resolvedEventBus);
+
+    Field lockField = EventBus.class.getDeclaredField("lock");
+    lockField.setAccessible(true);
+    lock = (Lock) lockField.get(resolvedEventBus);
+
+    bakeHandlersMethod = EventBus.class.getDeclaredMethod("bakeHandlers", Class.class);
+    bakeHandlersMethod.setAccessible(true);
+
+    dispatchMethod = Slot.class.getDeclaredMethod("dispatch", Event.class);
+    dispatchMethod.setAccessible(true);
+
+    eventBus = resolvedEventBus;
+  }
+
+  private void bind(Slot slot) throws ReflectiveOperationException {
+    Key key = slot.key;
+
+    if (!resolveEventBus()) {
+      slot.listener = ExactEventListener.create(key.eventClass(), key.priority(), slot::dispatch);
+
+      ProxyServer.getInstance().getPluginManager().registerListener(plugin, slot.listener);
+
+      return;
+    }
+
+    lock.lock();
+
+    try {
+      byListenerAndPriority.computeIfAbsent(key.eventClass(), (_) -> new HashMap<>())
+          .computeIfAbsent(key.priority(), (_) -> new HashMap<>())
+          .put(slot, new Method[] { dispatchMethod });
+
+      bakeHandlersMethod.invoke(eventBus, key.eventClass());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void unbind(Slot slot) throws ReflectiveOperationException {
+    Key key = slot.key;
+
+    if (slot.listener != null) {
+      ProxyServer.getInstance().getPluginManager().unregisterListener(slot.listener);
+
+      return;
+    }
+
+    lock.lock();
+
+    try {
+      Map<Byte, Map<Object, Method[]>> priorities = byListenerAndPriority.get(key.eventClass());
+
+      if (priorities == null)
+        return;
+
+      Map<Object, Method[]> listeners = priorities.get(key.priority());
+
+      if (listeners != null) {
+        listeners.remove(slot);
+
+        if (listeners.isEmpty())
+          priorities.remove(key.priority());
+      }
+
+      if (priorities.isEmpty())
+        byListenerAndPriority.remove(key.eventClass());
+
+      bakeHandlersMethod.invoke(eventBus, key.eventClass());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public synchronized EventSubscription subscribe(Script script, Class<? extends Event> eventClass,
+      EventListenerOptions options, Value callback) throws ReflectiveOperationException {
+    Key key = new Key(eventClass, options.getPriority());
+    Slot slot = slots.get(key);
+
+    if (slot == null) {
+      slot = new Slot(key);
+
+      bind(slot);
+      slots.put(key, slot);
+    }
+
+    EventSubscription subscription = new EventSubscription(script, eventClass, options.getPriority(), callback);
+    slot.add(subscription);
+
+    return subscription;
+  }
+
+  /**
+   * Removes a subscription, unbinding the handler of its event class and
+   * priority once no script is subscribed to it
+   */
+  public synchronized void unsubscribe(EventSubscription subscription) {
+    Key key = new Key(subscription.getEventClass(), subscription.getPriority());
+    Slot slot = slots.get(key);
+
+    if (slot == null || !slot.remove(subscription) || !slot.isEmpty())
+      return;
+
+    slots.remove(key);
+
+    try {
+      unbind(slot);
+    } catch (ReflectiveOperationException e) {
+      e.printStackTrace();
+    }
+  }
+}
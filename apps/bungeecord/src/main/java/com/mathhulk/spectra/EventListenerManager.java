@@ -2,18 +2,15 @@ package com.mathhulk.spectra;
 
 import org.graalvm.polyglot.Value;
 
-import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.plugin.Event;
 import net.md_5.bungee.api.plugin.Listener;
-import net.md_5.bungee.api.plugin.Plugin;
-import net.md_5.bungee.event.EventHandler;
 
 import java.util.ArrayList;
 
 public class EventListenerManager {
   private final Script script;
 
-  private final ArrayList<Listener> eventListeners = new ArrayList<>();
+  private final ArrayList<EventSubscription> eventListeners = new ArrayList<>();
 
   public EventListenerManager(Script script) {
     this.script = script;
@@ -24,36 +21,28 @@ public class EventListenerManager {
   }
 
   public void removeEventListeners() {
-    for (Listener eventListener : eventListeners) {
+    for (EventSubscription eventListener : new ArrayList<>(eventListeners)) {
       removeEventListener(eventListener);
     }
   }
 
   public void removeEventListener(Listener eventListener) {
-    if (!eventListeners.contains(eventListener)) {
+    if (!(eventListener instanceof EventSubscription subscription) || !eventListeners.remove(subscription)) {
       return;
     }
 
-    ProxyServer.getInstance().getPluginManager().unregisterListener(eventListener);
+    script.getPlugin().getEventDispatcher().unsubscribe(subscription);
   }
 
-  public Listener addEventListener(Class<? extends Event> eventClass, Value callback) {
-    Plugin plugin = script.getPlugin();
+  public Listener addEventListener(Class<? extends Event> eventClass, Value callback, Value... optionalParameters) {
+    Spectra plugin = script.getPlugin();
 
     try {
-      Listener eventListener = new Listener() {
-        @EventHandler
-        public void onEvent(Event event) {
-          if (!eventClass.isInstance(event)) {
-            return;
-          }
+      EventListenerOptions options = EventListenerOptions.parse(optionalParameters);
 
-          callback.execute(event);
-        }
-      };
-
-      // Register the executor
-      ProxyServer.getInstance().getPluginManager().registerListener(plugin, eventListener);
+      // The dispatcher binds a single handler to the exact event class and priority
+      EventSubscription eventListener = plugin.getEventDispatcher().subscribe(script, eventClass, options,
+          callback);
 
       eventListeners.add(eventListener);
 
@@ -77,6 +66,6 @@ public class EventListenerManager {
 
   @FunctionalInterface
   public interface AddEventListenerFunction {
-    Listener apply(Class<? extends Event> eventClass, Value callback);
+    Listener apply(Class<? extends Event> eventClass, Value callback, Value... optionalParameters);
   }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.mathhulk.spectra;
+
+import org.graalvm.polyglot.Value;
+
+import net.md_5.bungee.event.EventPriority;
+
+/**
+ * Options passed to addEventListener, either an EventPriority or an object
+ * such as <code>{ priority: "HIGH" }</code>. Priorities are given by name or
+ * as the byte constants of EventPriority.
+ */
+public class EventListenerOptions {
+  private Byte priority = EventPriority.NORMAL;
+
+  public static EventListenerOptions parse(Value... optionalParameters) {
+    if (optionalParameters.length > 1) {
+      throw new IllegalArgumentException("Expected at most 3 arguments but found " + (optionalParameters.length + 2));
+    }
+
+    EventListenerOptions options = new EventListenerOptions();
+
+    if (optionalParameters.length == 0 || optionalParameters[0].isNull())
+      return options;
+
+    Value parameter = optionalParameters[0];
+
+    if (parameter.isNumber() || parameter.isString()) {
+      options.priority = parsePriority(parameter);
+
+      return options;
+    }
+
+    Value priority = parameter.getMember("priority");
+
+    if (priority != null && !priority.isNull())
+      options.priority = parsePriority(priority);
+
+    return options;
+  }
+
+  private static Byte parsePriority(Value priority) {
+    if (priority.isNumber())
+      return priority.asByte();
+
+    return switch (priority.asString().toUpperCase()) {
+      case "LOWEST" -> EventPriority.LOWEST;
+      case "LOW" -> EventPriority.LOW;
+      case "NORMAL" -> EventPriority.NORMAL;
+      case "HIGH" -> EventPriority.HIGH;
+      case "HIGHEST" -> EventPriority.HIGHEST;
+      default -> throw new IllegalArgumentException("Unknown event priority: " + priority.asString());
+    };
+  }
+
+  public Byte getPriority() {
+    return priority;
+  }
+}
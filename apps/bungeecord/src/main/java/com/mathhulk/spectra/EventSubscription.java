@@ -0,0 +1,59 @@
+package com.mathhulk.spectra;
+
+import org.graalvm.polyglot.Value;
+
+import net.md_5.bungee.api.plugin.Event;
+import net.md_5.bungee.api.plugin.Listener;
+
+/**
+ * A script callback subscribed through the EventDispatcher. It is returned to
+ * scripts as the listener to pass to removeEventListener.
+ */
+public class EventSubscription implements Listener {
+  private final Script script;
+
+  private final Class<? extends Event> eventClass;
+  private final Byte priority;
+  private final Value callback;
+
+  private final String label;
+
+  EventSubscription(Script script, Class<? extends Event> eventClass, Byte priority, Value callback) {
+    this.script = script;
+    this.eventClass = eventClass;
+    this.priority = priority;
+    this.callback = callback;
+
+    label = eventClass.getSimpleName();
+  }
+
+  public Script getScript() {
+    return script;
+  }
+
+  public Class<? extends Event> getEventClass() {
+    return eventClass;
+  }
+
+  public Byte getPriority() {
+    return priority;
+  }
+
+  /**
+   * Handles the event in the script's actor, waiting for it so the script can
+   * still modify or cancel the event
+   */
+  void dispatch(Event event) {
+    try {
+      script.getActor().call(label, () -> {
+        script.invoke(EntryPoint.EVENT, label, () -> callback.execute(event));
+
+        return null;
+      }, null);
+    } catch (Exception e) {
+      script.getPlugin().getLogger().severe("Failed to handle " + label + " in script: " + script.getName());
+
+      e.printStackTrace();
+    }
+  }
+}
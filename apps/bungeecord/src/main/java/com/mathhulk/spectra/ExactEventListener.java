@@ -0,0 +1,151 @@
+package com.mathhulk.spectra;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.function.Consumer;
+
+import net.md_5.bungee.api.plugin.Event;
+import net.md_5.bungee.api.plugin.Listener;
+
+/**
+ * A listener with a single handler for an exact event class and priority,
+ * which can be registered through the public plugin manager API.
+ *
+ * The event bus only finds handlers declared in the class of a listener, by
+ * the type of their parameter, so a hidden subclass declaring
+ * <code>@EventHandler(priority = p) public void onEvent(E event)</code> is
+ * defined for each event class and priority.
+ */
+abstract class ExactEventListener implements Listener {
+  private static final String SUPER_NAME = "com/mathhulk/spectra/ExactEventListener";
+  private static final String HANDLER_NAME = SUPER_NAME + "$Handler";
+
+  private Consumer<Event> handler;
+
+  /**
+   * Called by the handler of the hidden subclass
+   */
+  void dispatch(Event event) {
+    handler.accept(event);
+  }
+
+  public static Listener create(Class<? extends Event> eventClass, byte priority, Consumer<Event> handler)
+      throws ReflectiveOperationException {
+    byte[] bytes;
+
+    try {
+      bytes = generate(eventClass, priority);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    ExactEventListener listener = (ExactEventListener) MethodHandles.lookup().defineHiddenClass(bytes, false)
+        .lookupClass().getDeclaredConstructor().newInstance();
+    listener.handler = handler;
+
+    return listener;
+  }
+
+  /**
+   * Writes the class file of the subclass. Version 52 is used so the straight
+   * line methods need no stack map frames.
+   */
+  private static byte[] generate(Class<? extends Event> eventClass, byte priority) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeInt(0xCAFEBABE);
+    out.writeShort(0);
+    out.writeShort(52);
+
+    // Constant pool, numbered from 1
+    out.writeShort(20);
+    utf8(out, HANDLER_NAME); // 1
+    reference(out, 7, 1); // 2: class
+    utf8(out, SUPER_NAME); // 3
+    reference(out, 7, 3); // 4: class
+    utf8(out, "<init>"); // 5
+    utf8(out, "()V"); // 6
+    pair(out, 12, 5, 6); // 7: name and type
+    pair(out, 10, 4, 7); // 8: method
+    utf8(out, "onEvent"); // 9
+    utf8(out, "(L" + eventClass.getName().replace('.', '/') + ";)V"); // 10
+    utf8(out, "dispatch"); // 11
+    utf8(out, "(Lnet/md_5/bungee/api/plugin/Event;)V"); // 12
+    pair(out, 12, 11, 12); // 13: name and type
+    pair(out, 10, 4, 13); // 14: method
+    utf8(out, "Code"); // 15
+    utf8(out, "RuntimeVisibleAnnotations"); // 16
+    utf8(out, "Lnet/md_5/bungee/event/EventHandler;"); // 17
+    utf8(out, "priority"); // 18
+    out.writeByte(3); // 19: integer
+    out.writeInt(priority);
+
+    // Public final class, extending this one
+    out.writeShort(0x0031);
+    out.writeShort(2);
+    out.writeShort(4);
+    out.writeShort(0);
+    out.writeShort(0);
+
+    out.writeShort(2);
+
+    // public <init>() { super(); }
+    out.writeShort(0x0001);
+    out.writeShort(5);
+    out.writeShort(6);
+    out.writeShort(1);
+    out.writeShort(15);
+    out.writeInt(17);
+    out.writeShort(1);
+    out.writeShort(1);
+    out.writeInt(5);
+    out.write(new byte[] { 0x2a, (byte) 0xb7, 0, 8, (byte) 0xb1 });
+    out.writeShort(0);
+    out.writeShort(0);
+
+    // @EventHandler(priority = p) public void onEvent(E event) { dispatch(event); }
+    out.writeShort(0x0001);
+    out.writeShort(9);
+    out.writeShort(10);
+    out.writeShort(2);
+    out.writeShort(15);
+    out.writeInt(18);
+    out.writeShort(2);
+    out.writeShort(2);
+    out.writeInt(6);
+    out.write(new byte[] { 0x2a, 0x2b, (byte) 0xb6, 0, 14, (byte) 0xb1 });
+    out.writeShort(0);
+    out.writeShort(0);
+    out.writeShort(16);
+    out.writeInt(11);
+    out.writeShort(1);
+    out.writeShort(17);
+    out.writeShort(1);
+    out.writeShort(18);
+    out.writeByte('B');
+    out.writeShort(19);
+
+    out.writeShort(0);
+
+    return bytes.toByteArray();
+  }
+
+  private static void utf8(DataOutputStream out, String value) throws IOException {
+    out.writeByte(1);
+    out.writeUTF(value);
+  }
+
+  private static void reference(DataOutputStream out, int tag, int index) throws IOException {
+    out.writeByte(tag);
+    out.writeShort(index);
+  }
+
+  private static void pair(DataOutputStream out, int tag, int first, int second) throws IOException {
+    out.writeByte(tag);
+    out.writeShort(first);
+    out.writeShort(second);
+  }
+}
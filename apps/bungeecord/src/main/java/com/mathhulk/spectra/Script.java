@@ -4,24 +4,36 @@ import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 
+import net.md_5.bungee.api.ProxyServer;
+
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.Supplier;
 
 public class Script {
   private Boolean enabled = false;
   private Boolean loaded = false;
 
   private Context context;
+  // The parsed module, evaluated by load
+  private Value module;
   private Value exports;
 
   private EventListenerManager eventListenerManager;
   private CommandManager commandManager;
   private TaskManager taskManager;
+  private ScriptActor actor;
 
   private final Spectra plugin;
   private final File file;
 
   private final String name;
 
+  private final ScriptHeader header;
+  private final ScriptBudget budget;
+  private String hash;
+
   private final String language = "js";
 
   public Script(File file, Spectra plugin) {
@@ -29,6 +41,37 @@ public class Script {
     this.plugin = plugin;
 
     name = file.getName();
+    header = ScriptHeader.read(file);
+    budget = new ScriptBudget(name, header, plugin.getLogger());
+    budget.setRecovery(this::recover);
+  }
+
+  /**
+   * Reloads the script once the statement limit has cancelled its context,
+   * outside of its actor, which the reload waits on
+   */
+  private void recover() {
+    Context cancelledContext = context;
+
+    ProxyServer.getInstance().getScheduler().runAsync(plugin, () -> {
+      if (!loaded || context != cancelledContext)
+        return;
+
+      Boolean wasEnabled = enabled;
+
+      try {
+        disable();
+
+        if (wasEnabled)
+          enable();
+
+        plugin.getLogger().info("Reloaded script after its context was cancelled: " + name);
+      } catch (Exception e) {
+        plugin.getLogger().severe("Failed to reload script after its context was cancelled: " + name);
+
+        e.printStackTrace();
+      }
+    });
   }
 
   public File getFile() {
@@ -47,6 +90,71 @@ public class Script {
     return plugin;
   }
 
+  /**
+   * Gets the content hash of the last prepared source
+   */
+  public String getHash() {
+    return hash;
+  }
+
+  public ScriptHeader getHeader() {
+    return header;
+  }
+
+  public ScriptBudget getBudget() {
+    return budget;
+  }
+
+  /**
+   * Gets the actor which every call into the script goes through
+   */
+  public ScriptActor getActor() {
+    return actor;
+  }
+
+  public ScriptScheduler getScheduler() {
+    return taskManager == null ? null : taskManager.getScheduler();
+  }
+
+  /**
+   * Gets the number of pending timers of the script
+   */
+  public int getTaskCount() {
+    return taskManager == null ? 0 : taskManager.getTaskCount();
+  }
+
+  /**
+   * Calls into the script from the host, enforcing its budget and recording
+   * the time spent while profiling
+   */
+  public <T> T invoke(EntryPoint entryPoint, String label, Supplier<T> supplier, T fallback) {
+    if (!ScriptProfiler.isActive())
+      return budget.call(entryPoint, supplier, fallback);
+
+    long startTime = System.nanoTime();
+
+    try {
+      return budget.call(entryPoint, supplier, fallback);
+    } finally {
+      ScriptProfiler.record(name, entryPoint, label, System.nanoTime() - startTime);
+    }
+  }
+
+  public void invoke(EntryPoint entryPoint, String label, Runnable runnable) {
+    invoke(entryPoint, label, () -> {
+      runnable.run();
+
+      return null;
+    }, null);
+  }
+
+  /**
+   * Scripts opt out of the shared engine with <code>// @engine isolated</code>
+   */
+  public Boolean usesSharedEngine() {
+    return !header.get("engine", "shared").equals("isolated") && !budget.requiresIsolatedEngine();
+  }
+
   public Boolean isEnabled() {
     return enabled;
   }
@@ -55,20 +163,33 @@ public class Script {
     return loaded;
   }
 
-  public Boolean load() {
-    if (loaded)
+  /**
+   * Creates the context, then reads and parses the source without evaluating
+   * the script, so scripts can be prepared in parallel. Nothing is registered
+   * until the script is loaded.
+   */
+  public Boolean prepare() {
+    if (loaded || module != null)
       return false;
 
     eventListenerManager = new EventListenerManager(this);
     commandManager = new CommandManager(this);
     taskManager = new TaskManager(this);
+    actor = new ScriptActor(this);
 
     // TODO: Security
-    context = Context.newBuilder(language)
+    Context.Builder builder = Context.newBuilder(language)
         .allowAllAccess(true)
-        .option("js.esm-eval-returns-exports", "true")
-        .option("engine.WarnInterpreterOnly", "false")
-        .build();
+        .option("js.esm-eval-returns-exports", "true");
+
+    // Isolated scripts get a bound engine which is closed along with the context
+    if (usesSharedEngine())
+      builder.engine(SharedEngine.getEngine());
+
+    budget.configure(builder);
+
+    context = builder.build();
+    budget.attach(context);
 
     context.getBindings(language).putMember("addCommand",
         (CommandManager.AddCommandFunction) commandManager::addCommand);
@@ -90,7 +211,41 @@ public class Script {
         (TaskManager.ClearTimeoutFunction) taskManager::clearTimeout);
 
     try {
-      exports = context.eval(Source.newBuilder(language, file).build());
+      // Built from the bytes which were hashed, so the hash matches the source
+      byte[] content = Files.readAllBytes(file.toPath());
+
+      Source source = Source.newBuilder(language, file).content(new String(content, StandardCharsets.UTF_8))
+          .build();
+      hash = ScriptHash.of(content);
+
+      module = context.parse(source);
+
+      return true;
+    } catch (Exception e) {
+      plugin.getLogger().severe("Failed to prepare script: " + file.getName());
+
+      e.printStackTrace();
+
+      release();
+
+      return false;
+    }
+  }
+
+  /**
+   * Evaluates the script in its actor, preparing it first if needed
+   */
+  public Boolean load() {
+    if (loaded)
+      return false;
+
+    if (module == null && !prepare())
+      return false;
+
+    try {
+      Value preparedModule = module;
+
+      exports = actor.await("load", () -> preparedModule.execute());
 
       loaded = true;
 
@@ -100,8 +255,39 @@ public class Script {
 
       e.printStackTrace();
 
+      // Release anything registered before the failure
+      release();
+
       return false;
+    } finally {
+      module = null;
+    }
+  }
+
+  private void release() {
+    taskManager.removeTasks();
+    eventListenerManager.removeEventListeners();
+    commandManager.removeCommands();
+
+    close();
+
+    module = null;
+  }
+
+  /**
+   * Closes the actor and then the context, cancelling a message which is
+   * still running in the context after the actor timed out
+   */
+  private void close() {
+    if (actor.close()) {
+      context.close();
+
+      return;
     }
+
+    plugin.getLogger().warning("Cancelling a message still running in script: " + name);
+
+    context.close(true);
   }
 
   public Boolean enable() {
@@ -112,10 +298,17 @@ public class Script {
       return false;
 
     // Execute the onEnable event
-    Value enableEvent = exports.getMember("onEnable");
+    actor.await("onEnable", () -> {
+      // Statements of the module evaluation do not count against onEnable
+      budget.resetLimits();
+
+      Value enableEvent = exports.getMember("onEnable");
 
-    if (enableEvent != null)
-      enableEvent.executeVoid();
+      if (enableEvent != null)
+        enableEvent.executeVoid();
+
+      return null;
+    });
 
     enabled = true;
 
@@ -123,22 +316,37 @@ public class Script {
   }
 
   public Boolean disable() {
-    if (!loaded)
+    // A prepared script only holds its context
+    if (!loaded) {
+      if (module != null)
+        release();
+
       return false;
+    }
 
     // Execute the onDisable event
-    Value disableEvent = exports.getMember("onDisable");
+    try {
+      actor.await("onDisable", () -> {
+        Value disableEvent = enabled ? exports.getMember("onDisable") : null;
 
-    if (disableEvent != null)
-      disableEvent.executeVoid();
+        if (disableEvent != null)
+          disableEvent.executeVoid();
+
+        return null;
+      });
+    } catch (Exception e) {
+      plugin.getLogger().severe("Failed to execute onDisable in script: " + name);
+
+      e.printStackTrace();
+    }
 
     // Remove event listeners, commands, and tasks
     taskManager.removeTasks();
     eventListenerManager.removeEventListeners();
     commandManager.removeCommands();
 
-    // Close the context
-    context.close();
+    // Close the context once nothing can enter it
+    close();
 
     enabled = false;
     loaded = false;
@@ -0,0 +1,257 @@
+package com.mathhulk.spectra;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * The only thread which enters the context of a script. Commands, events and
+ * timers arriving on Netty and scheduler threads are posted to a mailbox,
+ * which a single virtual thread drains in order.
+ *
+ * The mailbox is a lock-free multi-producer, single-consumer queue, bounded by
+ * <code>spectra.actor.capacity</code>. Messages over the limit are rejected
+ * rather than queued.
+ */
+public class ScriptActor {
+  private static final int CAPACITY = Integer.getInteger("spectra.actor.capacity", 10_000);
+  private static final long CALL_TIMEOUT = Long.getLong("spectra.actor.call-timeout", 5_000);
+
+  private final Script script;
+  private final Thread thread;
+
+  // The consumer reads from head, and producers swap in a new tail
+  private Node head = new Node(null);
+  private final AtomicReference<Node> tail = new AtomicReference<>(head);
+
+  private final AtomicInteger size = new AtomicInteger();
+  private volatile Boolean waiting = false;
+  private volatile Boolean closed = false;
+
+  private final LongAdder processedMessages = new LongAdder();
+  private final LongAdder rejectedMessages = new LongAdder();
+  private final LongAdder totalLatency = new LongAdder();
+  private final AtomicLong maxLatency = new AtomicLong();
+  private final AtomicInteger maxDepth = new AtomicInteger();
+
+  private record Message(String label, Runnable runnable, Runnable discard, long postedTime) {
+  }
+
+  private static class Node {
+    private final Message message;
+    private volatile Node next;
+
+    // Claimed by whoever runs or discards the message, so it happens once
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    private Node(Message message) {
+      this.message = message;
+    }
+  }
+
+  public ScriptActor(Script script) {
+    this.script = script;
+
+    thread = Thread.ofVirtual().name("Spectra Script: " + script.getName()).start(this::run);
+  }
+
+  /**
+   * Posts a message without waiting for it to run. Returns false if the
+   * mailbox is full or closed.
+   */
+  public Boolean tell(String label, Runnable runnable) {
+    return post(label, runnable, null);
+  }
+
+  private Boolean post(String label, Runnable runnable, Runnable discard) {
+    if (closed)
+      return false;
+
+    int depth = size.incrementAndGet();
+
+    if (depth > CAPACITY) {
+      size.decrementAndGet();
+      rejectedMessages.increment();
+
+      return false;
+    }
+
+    maxDepth.accumulateAndGet(depth, Math::max);
+
+    Node node = new Node(new Message(label, runnable, discard, System.nanoTime()));
+    tail.getAndSet(node).next = node;
+
+    // The actor may have drained its mailbox and stopped since the check above
+    if (closed && node.claimed.compareAndSet(false, true)) {
+      if (discard != null)
+        discard.run();
+
+      return false;
+    }
+
+    if (waiting)
+      LockSupport.unpark(thread);
+
+    return true;
+  }
+
+  /**
+   * Runs a message and waits for its result, or returns the fallback if the
+   * message is rejected or does not finish within the call timeout
+   */
+  public <T> T call(String label, Supplier<T> supplier, T fallback) {
+    return call(label, supplier, fallback, CALL_TIMEOUT);
+  }
+
+  /**
+   * Runs a message and waits for it however long it takes, for loading and
+   * enabling the script
+   */
+  public <T> T await(String label, Supplier<T> supplier) {
+    return call(label, supplier, null, 0);
+  }
+
+  private <T> T call(String label, Supplier<T> supplier, T fallback, long timeout) {
+    // Calls made by the script itself, such as events it fires, run in place
+    if (Thread.currentThread() == thread)
+      return supplier.get();
+
+    CompletableFuture<T> result = new CompletableFuture<>();
+
+    Boolean posted = post(label, () -> {
+      try {
+        result.complete(supplier.get());
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      }
+    }, () -> result.complete(fallback));
+
+    if (!posted)
+      return fallback;
+
+    try {
+      return timeout > 0 ? result.get(timeout, TimeUnit.MILLISECONDS) : result.get();
+    } catch (TimeoutException e) {
+      script.getPlugin().getLogger().warning("Timed out waiting for " + label + " in script: " + script.getName());
+
+      return fallback;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException)
+        throw runtimeException;
+
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      return fallback;
+    }
+  }
+
+  private Message poll() {
+    while (true) {
+      Node next = head.next;
+
+      if (next == null)
+        return null;
+
+      head = next;
+      size.decrementAndGet();
+
+      // Skip messages their sender already failed
+      if (next.claimed.compareAndSet(false, true))
+        return next.message;
+    }
+  }
+
+  private void run() {
+    while (!closed) {
+      Message message = poll();
+
+      if (message == null) {
+        waiting = true;
+
+        // A message posted before the flag was set would otherwise wait
+        message = poll();
+
+        if (message == null) {
+          LockSupport.park(this);
+
+          waiting = false;
+          continue;
+        }
+
+        waiting = false;
+      }
+
+      long latency = System.nanoTime() - message.postedTime();
+
+      totalLatency.add(latency);
+      maxLatency.accumulateAndGet(latency, Math::max);
+
+      try {
+        message.runnable().run();
+      } catch (Throwable e) {
+        script.getPlugin().getLogger().severe("Failed to run " + message.label() + " in script: " + script.getName());
+
+        e.printStackTrace();
+      }
+
+      processedMessages.increment();
+    }
+
+    // Release callers waiting on messages which will not run
+    Message message;
+
+    while ((message = poll()) != null) {
+      if (message.discard() != null)
+        message.discard().run();
+    }
+  }
+
+  public Boolean isActorThread() {
+    return Thread.currentThread() == thread;
+  }
+
+  public int getQueueDepth() {
+    return size.get();
+  }
+
+  public String describe() {
+    long processed = processedMessages.sum();
+
+    return "mailbox " + size.get() + "/" + CAPACITY + " (max " + maxDepth.get() + "), processed " + processed
+        + ", rejected " + rejectedMessages.sum() + ", latency avg "
+        + String.format("%.2f", processed == 0 ? 0 : totalLatency.sum() / (double) processed / 1_000_000) + "ms, max "
+        + String.format("%.2f", maxLatency.get() / 1_000_000.0) + "ms";
+  }
+
+  /**
+   * Stops the actor after the message it is running. Messages still in the
+   * mailbox are discarded. Returns false if a message is still running once
+   * the call timeout has passed.
+   */
+  public Boolean close() {
+    closed = true;
+
+    LockSupport.unpark(thread);
+
+    if (isActorThread())
+      return true;
+
+    try {
+      thread.join(CALL_TIMEOUT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    return !thread.isAlive();
+  }
+}
@@ -1,24 +1,49 @@
 package com.mathhulk.spectra;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import net.md_5.bungee.api.ProxyServer;
 
 public class ScriptManager {
   private final Spectra plugin;
 
-  private final Map<String, Script> scripts = new HashMap<>();
+  // Sorted so scripts are always enabled in the same order
+  private final Map<String, Script> scripts = new ConcurrentSkipListMap<>();
+  private final Map<String, Script> replacements = new ConcurrentHashMap<>();
 
   private static final List<String> ALLOWED_EXTENSIONS = List.of("js", "mjs");
 
+  private static final int LOAD_PARALLELISM = Integer.getInteger("spectra.load-parallelism",
+      Runtime.getRuntime().availableProcessors());
+
+  // Editors and rsync emit several events per save, which are coalesced per file
+  private static final long WATCH_DEBOUNCE = Long.getLong("spectra.watch-debounce", 200L);
+
+  // Reloads build the replacement before the running script is disabled
+  private static final Boolean HOT_SWAP = Boolean.parseBoolean(System.getProperty("spectra.hot-swap", "true"));
+
   private static final File SCRIPTS_DIRECTORY = new File(ProxyServer.getInstance().getPluginsFolder().getParentFile(),
       "scripts");
 
+  private final ModuleGraph moduleGraph = new ModuleGraph();
+
   private Boolean enabled = false;
   private Boolean loaded = false;
 
@@ -30,12 +55,10 @@ public class ScriptManager {
     this.plugin = plugin;
   }
 
-  public Script addScript(String fileName, Boolean enable) {
-    Script existingScript = scripts.get(fileName);
-
-    if (existingScript != null)
-      return null;
-
+  /**
+   * Creates a script for a file in the scripts directory without loading it
+   */
+  private Script createScript(String fileName) {
     File file = new File(SCRIPTS_DIRECTORY, fileName);
 
     if (!file.exists()) {
@@ -52,14 +75,28 @@ public class ScriptManager {
       return null;
     }
 
+    return new Script(file, plugin);
+  }
+
+  public Script addScript(String fileName, Boolean enable) {
+    Script existingScript = scripts.get(fileName);
+
+    if (existingScript != null)
+      return null;
+
+    Script script = createScript(fileName);
+
+    if (script == null)
+      return null;
+
     try {
-      Script script = new Script(file, plugin);
       script.load();
 
       if (enable)
         script.enable();
 
       scripts.put(fileName, script);
+      moduleGraph.update(script.getName(), script.getFile());
 
       plugin.getLogger().info("Added script: " + fileName);
 
@@ -73,6 +110,10 @@ public class ScriptManager {
     }
   }
 
+  public ModuleGraph getModuleGraph() {
+    return moduleGraph;
+  }
+
   public Boolean isWatching() {
     return watching;
   }
@@ -107,6 +148,7 @@ public class ScriptManager {
 
     script.disable();
     scripts.remove(name);
+    moduleGraph.remove(name);
 
     return true;
   }
@@ -128,12 +170,17 @@ public class ScriptManager {
       return ALLOWED_EXTENSIONS.contains(extension);
     });
 
+    long startTime = System.nanoTime();
+
     if (files != null) {
-      for (File file : files) {
-        addScript(file.getName(), false);
-      }
+      Arrays.sort(files);
+
+      loadScripts(files);
     }
 
+    plugin.getLogger().info("Loaded " + scripts.size() + " scripts in "
+        + (System.nanoTime() - startTime) / 1_000_000 + "ms");
+
     if (watch)
       startWatching();
 
@@ -142,6 +189,220 @@ public class ScriptManager {
     return true;
   }
 
+  /**
+   * Creates contexts and reads and parses sources on a bounded worker pool,
+   * then evaluates and adds the scripts on the calling thread in file name
+   * order, so their registrations are never made concurrently. The time of
+   * each phase is logged.
+   */
+  private void loadScripts(File[] files) {
+    List<Script> newScripts = new ArrayList<>();
+
+    for (File file : files) {
+      if (scripts.containsKey(file.getName()))
+        continue;
+
+      Script script = createScript(file.getName());
+
+      if (script != null)
+        newScripts.add(script);
+    }
+
+    int parallelism = Math.min(LOAD_PARALLELISM, newScripts.size());
+
+    long prepareTime = System.nanoTime();
+
+    if (parallelism > 1) {
+      ExecutorService executor = Executors.newFixedThreadPool(parallelism, (runnable) -> {
+        Thread thread = new Thread(runnable, "Spectra Script Loader");
+        thread.setDaemon(true);
+
+        return thread;
+      });
+
+      List<Future<Boolean>> futures = new ArrayList<>();
+
+      for (Script script : newScripts) {
+        futures.add(executor.submit(script::prepare));
+      }
+
+      // Every script is done preparing before any is evaluated
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (Exception e) {
+          plugin.getLogger().severe("Failed to prepare script: " + newScripts.get(i).getName());
+
+          e.printStackTrace();
+        }
+      }
+
+      executor.shutdown();
+    }
+
+    long evaluateTime = System.nanoTime();
+
+    for (Script script : newScripts) {
+      script.load();
+
+      scripts.put(script.getName(), script);
+      moduleGraph.update(script.getName(), script.getFile());
+
+      plugin.getLogger().info("Added script: " + script.getName());
+    }
+
+    // Scripts are prepared as they are evaluated without a pool
+    plugin.getLogger().info("Prepared " + newScripts.size() + " scripts in "
+        + (evaluateTime - prepareTime) / 1_000_000 + "ms on " + Math.max(parallelism, 1)
+        + " threads, evaluated them in " + (System.nanoTime() - evaluateTime) / 1_000_000 + "ms");
+  }
+
+  /**
+   * Adds, reloads, or removes a script to match its file, skipping the reload
+   * when the content did not change
+   */
+  public void syncScript(String name) {
+    File file = new File(SCRIPTS_DIRECTORY, name);
+    Script script = scripts.get(name);
+
+    if (!file.exists()) {
+      removeScript(name);
+
+      return;
+    }
+
+    if (script == null) {
+      addScript(name, true);
+
+      return;
+    }
+
+    try {
+      if (ScriptHash.of(file).equals(script.getHash()))
+        return;
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+
+    reloadScript(name);
+  }
+
+  /**
+   * Syncs changed script files and reloads the scripts which import changed
+   * modules, reloading each script at most once
+   */
+  public void syncFiles(List<Path> files) {
+    Path scriptsPath = SCRIPTS_DIRECTORY.toPath().toAbsolutePath().normalize();
+
+    Set<String> syncedNames = new TreeSet<>();
+    Set<String> dependentNames = new TreeSet<>();
+
+    for (Path file : files) {
+      file = file.toAbsolutePath().normalize();
+
+      if (file.getParent().equals(scriptsPath) && isScriptFile(file)) {
+        String name = file.getFileName().toString();
+
+        syncScript(name);
+        syncedNames.add(name);
+      }
+
+      if (moduleGraph.hasChanged(file))
+        dependentNames.addAll(moduleGraph.getDependents(file));
+    }
+
+    dependentNames.removeAll(syncedNames);
+
+    for (String name : dependentNames) {
+      reloadScript(name);
+    }
+  }
+
+  private static Boolean isScriptFile(Path file) {
+    String name = file.getFileName().toString();
+
+    return ALLOWED_EXTENSIONS.contains(name.substring(name.lastIndexOf(".") + 1));
+  }
+
+  /**
+   * Registers the scripts directory and its subdirectories, so changes to
+   * imported modules are seen
+   */
+  private void registerDirectories(Path directory) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes) throws IOException {
+        path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  public Boolean reloadScript(String name) {
+    Script script = scripts.get(name);
+
+    if (script == null)
+      return false;
+
+    if (!HOT_SWAP) {
+      removeScript(name);
+
+      return addScript(name, true) != null;
+    }
+
+    Script replacement = createScript(name);
+
+    if (replacement == null)
+      return false;
+
+    // A newer reload supersedes any replacement which is still loading
+    replacements.put(name, replacement);
+
+    replacement.load();
+
+    swapScript(script, replacement);
+
+    return true;
+  }
+
+  /**
+   * Replaces a running script with its loaded replacement, keeping the running
+   * script if the replacement failed to load
+   */
+  private synchronized void swapScript(Script script, Script replacement) {
+    String name = script.getName();
+
+    if (!replacements.remove(name, replacement)) {
+      replacement.disable();
+
+      return;
+    }
+
+    if (!replacement.isLoaded()) {
+      plugin.getLogger().severe("Failed to reload script, keeping the running version: " + name);
+
+      return;
+    }
+
+    Script currentScript = scripts.get(name);
+
+    if (currentScript == null) {
+      replacement.disable();
+
+      return;
+    }
+
+    currentScript.disable();
+    replacement.enable();
+
+    scripts.put(name, replacement);
+    moduleGraph.update(replacement.getName(), replacement.getFile());
+
+    plugin.getLogger().info("Reloaded script: " + name);
+  }
+
   public void stopWatching() {
     if (!watching)
       return;
@@ -169,18 +430,21 @@ public class ScriptManager {
 
         watchService = FileSystems.getDefault().newWatchService();
 
-        folderPath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
-            StandardWatchEventKinds.ENTRY_DELETE);
+        registerDirectories(folderPath);
 
         plugin.getLogger().info("Started watching for scripts");
 
         watching = true;
 
+        // Files with pending changes and the time of their last event
+        Map<Path, Long> pendingFiles = new HashMap<>();
+
         while (watching) {
           WatchKey key;
 
           try {
-            key = watchService.take();
+            key = pendingFiles.isEmpty() ? watchService.take()
+                : watchService.poll(WATCH_DEBOUNCE, TimeUnit.MILLISECONDS);
           } catch (InterruptedException e) {
             if (!watching)
               break;
@@ -188,35 +452,47 @@ public class ScriptManager {
             continue;
           }
 
-          //
-          for (WatchEvent<?> event : key.pollEvents()) {
-            WatchEvent.Kind<?> kind = event.kind();
+          if (key != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+              if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                continue;
 
-            Path filePath = folderPath.resolve((Path) event.context());
-            File file = filePath.toFile();
+              Path filePath = ((Path) key.watchable()).resolve((Path) event.context());
 
-            String name = file.getName();
-            String extension = name.substring(name.lastIndexOf(".") + 1);
+              if (Files.isDirectory(filePath)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE)
+                  registerDirectories(filePath);
 
-            if (!ALLOWED_EXTENSIONS.contains(extension)) {
-              continue;
-            }
+                continue;
+              }
 
-            if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
-              addScript(name, true);
-            }
+              if (!isScriptFile(filePath)) {
+                continue;
+              }
 
-            if (kind == StandardWatchEventKinds.ENTRY_MODIFY) {
-              removeScript(name);
-              addScript(name, true);
+              pendingFiles.put(filePath, System.currentTimeMillis());
             }
 
-            if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
-              removeScript(name);
-            }
+            key.reset();
+          }
+
+          // Sync files which have been quiet for the debounce window
+          long now = System.currentTimeMillis();
+          List<Path> changedFiles = new ArrayList<>();
+          Iterator<Map.Entry<Path, Long>> iterator = pendingFiles.entrySet().iterator();
+
+          while (iterator.hasNext()) {
+            Map.Entry<Path, Long> entry = iterator.next();
+
+            if (now - entry.getValue() < WATCH_DEBOUNCE)
+              continue;
+
+            iterator.remove();
+            changedFiles.add(entry.getKey());
           }
 
-          key.reset();
+          if (!changedFiles.isEmpty())
+            syncFiles(changedFiles);
         }
       } catch (Exception e) {
         e.printStackTrace();
@@ -0,0 +1,151 @@
+package com.mathhulk.spectra;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the timers of a script separately from the BungeeCord scheduler.
+ *
+ * A single timer thread shared by every script decides when tasks are due, and
+ * posts them to the actor of the script, so timers never enter the script's
+ * context concurrently.
+ */
+public class ScriptScheduler {
+  private static ScheduledThreadPoolExecutor timer;
+
+  private final Script script;
+
+  private final AtomicInteger queueDepth = new AtomicInteger();
+
+  private final LongAdder completedTasks = new LongAdder();
+  private final LongAdder droppedTasks = new LongAdder();
+  private final LongAdder totalLag = new LongAdder();
+  private final AtomicLong maxLag = new AtomicLong();
+
+  private volatile Boolean closed = false;
+
+  public ScriptScheduler(Script script) {
+    this.script = script;
+  }
+
+  private static synchronized ScheduledThreadPoolExecutor getTimer() {
+    if (timer == null) {
+      timer = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+        Thread thread = new Thread(runnable, "Spectra Script Timer");
+        thread.setDaemon(true);
+
+        return thread;
+      });
+
+      // Cancelled timers are removed from the queue right away
+      timer.setRemoveOnCancelPolicy(true);
+    }
+
+    return timer;
+  }
+
+  public static synchronized void shutdown() {
+    if (timer == null)
+      return;
+
+    timer.shutdownNow();
+    timer = null;
+  }
+
+  /**
+   * Schedules a task, calling dropped instead if it is due while the actor of
+   * the script cannot take it
+   */
+  public ScheduledFuture<?> schedule(String label, Runnable runnable, long delay, Runnable dropped) {
+    long dueTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+
+    return getTimer().schedule(() -> {
+      if (!execute(label, runnable, dueTime))
+        dropped.run();
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  public ScheduledFuture<?> scheduleAtFixedRate(String label, Runnable runnable, long period) {
+    long periodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(period, 1));
+    long firstDueTime = System.nanoTime() + periodNanos;
+
+    AtomicLong runs = new AtomicLong();
+    AtomicBoolean queued = new AtomicBoolean();
+
+    return getTimer().scheduleAtFixedRate(() -> {
+      long dueTime = firstDueTime + runs.getAndIncrement() * periodNanos;
+
+      // An interval which has not run since it was last queued is skipped
+      if (!queued.compareAndSet(false, true))
+        return;
+
+      Boolean posted = execute(label, () -> {
+        queued.set(false);
+
+        runnable.run();
+      }, dueTime);
+
+      if (!posted)
+        queued.set(false);
+    }, Math.max(period, 1), Math.max(period, 1), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Posts a task to the actor of the script. Returns false if the task was
+   * dropped.
+   */
+  public Boolean execute(String label, Runnable runnable, long dueTime) {
+    if (closed)
+      return false;
+
+    queueDepth.incrementAndGet();
+
+    Boolean posted = script.getActor().tell(label, () -> {
+      queueDepth.decrementAndGet();
+
+      if (closed)
+        return;
+
+      long lag = Math.max(System.nanoTime() - dueTime, 0);
+
+      totalLag.add(lag);
+      maxLag.accumulateAndGet(lag, Math::max);
+
+      script.invoke(EntryPoint.TASK, label, runnable);
+
+      completedTasks.increment();
+    });
+
+    if (!posted) {
+      queueDepth.decrementAndGet();
+      droppedTasks.increment();
+    }
+
+    return posted;
+  }
+
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  public long getCompletedTasks() {
+    return completedTasks.sum();
+  }
+
+  public String describe() {
+    long completed = completedTasks.sum();
+
+    return "queue " + queueDepth.get() + ", completed " + completed + ", dropped " + droppedTasks.sum() + ", lag avg "
+        + String.format("%.2f", completed == 0 ? 0 : totalLag.sum() / (double) completed / 1_000_000) + "ms, max "
+        + String.format("%.2f", maxLag.get() / 1_000_000.0) + "ms";
+  }
+
+  public void close() {
+    closed = true;
+  }
+}
@@ -50,6 +50,61 @@ public class ScriptsCommand extends Command implements TabExecutor {
       sender.sendMessage(new TextComponent("Started watching for scripts."));
     }
 
+    if (firstArgument.equals("engine")) {
+      sender.sendMessage(new TextComponent("Engine: " + SharedEngine.describe()));
+    }
+
+    if (firstArgument.equals("budgets")) {
+      for (Script script : plugin.getScriptManager().getScripts()) {
+        sender.sendMessage(new TextComponent(script.getName() + ": " + script.getBudget().describe()));
+      }
+    }
+
+    if (firstArgument.equals("tasks")) {
+      for (Script script : plugin.getScriptManager().getScripts()) {
+        ScriptScheduler scheduler = script.getScheduler();
+
+        ScriptActor actor = script.getActor();
+
+        sender.sendMessage(new TextComponent(script.getName() + ": " + script.getTaskCount() + " timers"
+            + (scheduler == null ? "" : ", " + scheduler.describe())));
+
+        if (actor != null)
+          sender.sendMessage(new TextComponent(script.getName() + ": " + actor.describe()));
+      }
+    }
+
+    if (firstArgument.equals("profile")) {
+      if (arguments.length < 2) {
+        sender.sendMessage(new TextComponent("Usage: /scripts profile <start|stop|report>"));
+        return;
+      }
+
+      String action = arguments[1];
+
+      if (action.equals("start")) {
+        if (!ScriptProfiler.start()) {
+          sender.sendMessage(new TextComponent("Already profiling scripts."));
+          return;
+        }
+
+        sender.sendMessage(new TextComponent("Started profiling scripts."));
+      }
+
+      if (action.equals("stop")) {
+        if (!ScriptProfiler.stop()) {
+          sender.sendMessage(new TextComponent("Not profiling scripts."));
+          return;
+        }
+
+        sender.sendMessage(new TextComponent("Stopped profiling scripts."));
+      }
+
+      if (action.equals("report")) {
+        ScriptProfiler.report(10).forEach((line) -> sender.sendMessage(new TextComponent(line)));
+      }
+    }
+
     if (firstArgument.equals("list")) {
       ArrayList<Script> scripts = plugin.getScriptManager().getScripts();
 
@@ -97,6 +152,22 @@ public class ScriptsCommand extends Command implements TabExecutor {
       sender.sendMessage(new TextComponent("Disabled script: " + scriptName));
     }
 
+    if (firstArgument.equals("reload")) {
+      if (arguments.length < 2) {
+        sender.sendMessage(new TextComponent("Usage: /scripts reload <script>"));
+        return;
+      }
+
+      String scriptName = arguments[1];
+
+      if (!plugin.getScriptManager().reloadScript(scriptName)) {
+        sender.sendMessage(new TextComponent("Failed to reload script: " + scriptName));
+        return;
+      }
+
+      sender.sendMessage(new TextComponent("Reloading script: " + scriptName));
+    }
+
     if (firstArgument.equals("remove")) {
       if (arguments.length < 2) {
         sender.sendMessage(new TextComponent("Usage: /scripts remove <script>"));
@@ -157,10 +228,11 @@ public class ScriptsCommand extends Command implements TabExecutor {
   @Override
   public List<String> onTabComplete(CommandSender sender, String[] args) {
     if (args.length == 1) {
-      return List.of("start-watching", "stop-watching", "list", "enable", "disable", "remove", "add");
+      return List.of("start-watching", "stop-watching", "list", "enable", "disable", "reload", "remove",
+          "add", "engine", "budgets", "tasks", "profile");
     }
 
-    if (args.length == 2 && List.of("enable", "disable", "remove", "add").contains(args[0])) {
+    if (args.length == 2 && List.of("enable", "disable", "reload", "remove", "add").contains(args[0])) {
       ArrayList<Script> scripts = plugin.getScriptManager().getScripts();
 
       ArrayList<String> scriptNames = new ArrayList<>();
@@ -169,6 +241,10 @@ public class ScriptsCommand extends Command implements TabExecutor {
       return scriptNames;
     }
 
+    if (args.length == 2 && args[0].equals("profile")) {
+      return List.of("start", "stop", "report");
+    }
+
     return new ArrayList<>();
   }
 }
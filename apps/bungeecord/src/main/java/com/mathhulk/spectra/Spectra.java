@@ -5,9 +5,13 @@ import net.md_5.bungee.api.plugin.Plugin;
 
 public class Spectra extends Plugin {
   private ScriptManager scriptManager;
+  private final EventDispatcher eventDispatcher = new EventDispatcher(this);
 
   @Override
   public void onLoad() {
+    // Create the shared engine and report whether scripts will be compiled
+    SharedEngine.logRuntime(getLogger());
+
     scriptManager = new ScriptManager(this);
 
     // TODO: Add a flag to disable watching by default
@@ -26,10 +30,15 @@ public class Spectra extends Plugin {
 
   @Override
   public void onDisable() {
-    if (scriptManager == null)
-      return;
+    if (scriptManager != null)
+      scriptManager.disable();
+
+    ScriptScheduler.shutdown();
+    SharedEngine.close();
+  }
 
-    scriptManager.disable();
+  public EventDispatcher getEventDispatcher() {
+    return eventDispatcher;
   }
 
   public ScriptManager getScriptManager() {
@@ -1,23 +1,44 @@
 package com.mathhulk.spectra;
 
-import java.util.HashMap;
-import java.util.concurrent.TimeUnit;
-
-import net.md_5.bungee.api.scheduler.ScheduledTask;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TaskManager {
-  private final HashMap<Integer, ScheduledTask> tasks = new HashMap<>();
+  private final AtomicInteger taskId = new AtomicInteger();
+  private final Map<Integer, Timer> tasks = new ConcurrentHashMap<>();
 
   private final Script script;
+  private final ScriptScheduler scheduler;
+
+  /**
+   * A timer of the script. Cancelling it also stops a run which is already
+   * queued in the actor.
+   */
+  private record Timer(ScheduledFuture<?> future, AtomicBoolean cancelled) {
+    private void cancel() {
+      cancelled.set(true);
+      future.cancel(false);
+    }
+  }
 
   TaskManager(Script script) {
     this.script = script;
+
+    scheduler = new ScriptScheduler(script);
   }
 
   public Script getScript() {
     return script;
   }
 
+  public ScriptScheduler getScheduler() {
+    return scheduler;
+  }
+
   @FunctionalInterface
   public interface SetIntervalFunction {
     Integer apply(Runnable task, long delay);
@@ -39,31 +60,50 @@ public class TaskManager {
   }
 
   public Integer setInterval(Runnable task, long delay) {
-    ScheduledTask scheduledTask = script.getPlugin().getProxy().getScheduler().schedule(script.getPlugin(), task, delay,
-        delay, TimeUnit.MILLISECONDS);
+    Integer id = taskId.incrementAndGet();
+    AtomicBoolean cancelled = new AtomicBoolean();
 
-    Integer id = scheduledTask.getId();
-    tasks.put(id, scheduledTask);
+    tasks.put(id, new Timer(scheduler.scheduleAtFixedRate("interval " + delay + "ms", () -> {
+      if (!cancelled.get())
+        task.run();
+    }, delay), cancelled));
 
     return id;
   }
 
   public void clearInterval(Integer id) {
-    ScheduledTask task = tasks.get(id);
+    Timer timer = tasks.remove(id);
 
-    if (task == null) {
+    if (timer == null) {
       return;
     }
 
-    script.getPlugin().getProxy().getScheduler().cancel(task);
+    timer.cancel();
   }
 
   public Integer setTimeout(Runnable task, long delay) {
-    ScheduledTask scheduledTask = script.getPlugin().getProxy().getScheduler().schedule(script.getPlugin(), task, delay,
-        TimeUnit.MILLISECONDS);
+    Integer id = taskId.incrementAndGet();
+    AtomicBoolean cancelled = new AtomicBoolean();
+    AtomicBoolean finished = new AtomicBoolean();
+
+    // Timeouts are forgotten once they have run, or once the actor could not take them
+    Runnable forget = () -> {
+      finished.set(true);
+      tasks.remove(id);
+    };
 
-    Integer id = scheduledTask.getId();
-    tasks.put(id, scheduledTask);
+    ScheduledFuture<?> future = scheduler.schedule("timeout " + delay + "ms", () -> {
+      forget.run();
+
+      if (!cancelled.get())
+        task.run();
+    }, delay, forget);
+
+    tasks.put(id, new Timer(future, cancelled));
+
+    // A short timeout may have finished before it was stored
+    if (finished.get())
+      tasks.remove(id);
 
     return id;
   }
@@ -72,9 +112,17 @@ public class TaskManager {
     clearInterval(id);
   }
 
+  public int getTaskCount() {
+    return tasks.size();
+  }
+
   public void removeTasks() {
-    for (ScheduledTask task : tasks.values()) {
-      script.getPlugin().getProxy().getScheduler().cancel(task);
+    for (Timer timer : new ArrayList<>(tasks.values())) {
+      timer.cancel();
     }
+
+    tasks.clear();
+
+    scheduler.close();
   }
 }
@@ -38,6 +38,15 @@ declare global {
         toString(): string;
       }
     }
+    namespace nio {
+      interface ByteBuffer {
+        capacity(): number;
+        get(index: number): number;
+        put(index: number, value: number): ByteBuffer;
+        limit(): number;
+        position(): number;
+      }
+    }
     namespace util {
       class Scanner {
         constructor(source: io.File);
@@ -1,5 +1,51 @@
 import "./bukkit.js";
 
+type EventFilter = {
+  world?: string | string[];
+  permission?: string | string[];
+  material?: string | string[];
+  entityType?: string | string[];
+  cancelled?: boolean;
+};
+
+type WorkerMessageEvent = {
+  data: unknown;
+  transfer: java.nio.ByteBuffer[];
+};
+
+interface ScriptWorker {
+  postMessage(message: unknown, transfer?: java.nio.ByteBuffer[]): void;
+  onMessage(callback: (event: WorkerMessageEvent) => void): void;
+  terminate(): void;
+}
+
+type CompletionCandidate = string | { value: string; permission?: string };
+
+type ArgumentCompletions = {
+  values: CompletionCandidate[] | (() => CompletionCandidate[]);
+  refresh?: number;
+  permission?: string;
+};
+
+type CommandArgument = {
+  name: string;
+  type?:
+    | "string"
+    | "integer"
+    | "number"
+    | "boolean"
+    | "enum"
+    | "duration"
+    | "player"
+    | "world"
+    | "location";
+  optional?: boolean;
+  varargs?: boolean;
+  values?: string[];
+  min?: number;
+  max?: number;
+};
+
 declare global {
   function addCommand(
     options: {
@@ -8,12 +54,15 @@ declare global {
       description?: string;
       usage?: string;
       permission?: string;
+      completions?: (CompletionCandidate[] | ArgumentCompletions | null)[];
+      arguments?: CommandArgument[];
     },
     callback: (
       sender: org.bukkit.command.CommandSender,
       command: org.bukkit.command.Command,
       label: string,
-      args: string[]
+      args: string[],
+      values: Record<string, any> | null
     ) => boolean
   ): org.bukkit.command.Command;
 
@@ -23,13 +72,52 @@ declare global {
       sender: org.bukkit.command.CommandSender,
       command: org.bukkit.command.Command,
       label: string,
-      args: string[]
+      args: string[],
+      values: Record<string, any> | null
     ) => boolean
   ): org.bukkit.command.Command;
 
   function addEventListener<T extends abstract new (...args: any) => any>(
     event: T,
-    callback: (event: InstanceType<T>) => void
+    callback: (event: InstanceType<T>) => void,
+    priority?: org.bukkit.event.EventPriority
+  ): org.bukkit.event.Listener;
+
+  function addEventListener<T extends abstract new (...args: any) => any>(
+    event: T,
+    callback: (event: InstanceType<T>) => void,
+    options: {
+      priority?: org.bukkit.event.EventPriority | string;
+      filter?: EventFilter;
+      ignoreCancelled?: boolean;
+      async?: false;
+    }
+  ): org.bukkit.event.Listener;
+
+  // The default export of the module handles the snapshots
+  function addEventListener<T extends abstract new (...args: any) => any>(
+    event: T,
+    module: string,
+    options: {
+      priority?: org.bukkit.event.EventPriority | string;
+      filter?: EventFilter;
+      ignoreCancelled?: boolean;
+      async: true;
+      fields: string[];
+    }
+  ): org.bukkit.event.Listener;
+
+  // The batch is reused, so it and its snapshots are only valid during the callback
+  function addEventListener<T extends abstract new (...args: any) => any>(
+    event: T,
+    callback: (events: readonly Readonly<Record<string, unknown>>[]) => void,
+    options: {
+      priority?: org.bukkit.event.EventPriority | string;
+      filter?: EventFilter;
+      ignoreCancelled?: boolean;
+      batch: true | { size?: number };
+      fields: string[];
+    }
   ): org.bukkit.event.Listener;
 
   function removeEventListener(listener: org.bukkit.event.Listener): void;
@@ -40,6 +128,19 @@ declare global {
 
   function setTimeout(callback: () => void, delay: number): number;
 
+  function setImmediate(callback: () => void): void;
+
+  function queueMicrotask(callback: () => void): void;
+
+  const isWorker: boolean;
+
+  function createWorker(path: string): ScriptWorker;
+
+  // Only available inside a worker
+  function postMessage(message: unknown, transfer?: java.nio.ByteBuffer[]): void;
+
+  function onMessage(callback: (event: WorkerMessageEvent) => void): void;
+
   // @ts-expect-error
   const console: {
     log(...args: unknown[]): void;
@@ -0,0 +1,14 @@
+package com.mathhulk.spectra;
+
+/**
+ * The ways the host calls into a script
+ */
+public enum EntryPoint {
+  EVENT,
+  COMMAND,
+  TASK;
+
+  public String getName() {
+    return name().toLowerCase();
+  }
+}
@@ -0,0 +1,121 @@
+package com.mathhulk.spectra;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tracks which scripts import which modules, so a change to a shared module
+ * only reloads the scripts that depend on it
+ */
+public class ModuleGraph {
+  // Static imports, re-exports, side effect imports, and dynamic imports
+  private static final Pattern IMPORT_PATTERN = Pattern.compile(
+      "(?:\\bfrom\\s*|\\bimport\\s*\\(?\\s*)['\"]([^'\"]+)['\"]");
+
+  private final Map<String, Set<Path>> dependencies = new ConcurrentHashMap<>();
+  private final Map<Path, Set<String>> dependents = new ConcurrentHashMap<>();
+  private final Map<Path, String> hashes = new ConcurrentHashMap<>();
+
+  /**
+   * Scans the imports of a script, replacing its previous dependencies
+   */
+  public synchronized void update(String name, File file) {
+    remove(name);
+
+    Set<Path> modules = new HashSet<>();
+    scan(file.toPath().toAbsolutePath().normalize(), modules);
+
+    dependencies.put(name, modules);
+
+    for (Path module : modules) {
+      dependents.computeIfAbsent(module, (_) -> ConcurrentHashMap.newKeySet()).add(name);
+    }
+  }
+
+  private void scan(Path file, Set<Path> modules) {
+    String content;
+
+    try {
+      content = Files.readString(file);
+    } catch (IOException e) {
+      return;
+    }
+
+    Matcher matcher = IMPORT_PATTERN.matcher(content);
+
+    while (matcher.find()) {
+      String specifier = matcher.group(1);
+
+      // Bare specifiers are not files in the scripts directory
+      if (!specifier.startsWith("./") && !specifier.startsWith("../") && !specifier.startsWith("/"))
+        continue;
+
+      Path module = file.getParent().resolve(specifier).normalize();
+
+      if (!Files.isRegularFile(module) || !modules.add(module))
+        continue;
+
+      try {
+        hashes.putIfAbsent(module, ScriptHash.of(module.toFile()));
+      } catch (IOException e) {
+        continue;
+      }
+
+      scan(module, modules);
+    }
+  }
+
+  public synchronized void remove(String name) {
+    Set<Path> modules = dependencies.remove(name);
+
+    if (modules == null)
+      return;
+
+    for (Path module : modules) {
+      Set<String> names = dependents.get(module);
+
+      if (names == null)
+        continue;
+
+      names.remove(name);
+
+      if (names.isEmpty()) {
+        dependents.remove(module);
+        hashes.remove(module);
+      }
+    }
+  }
+
+  public Set<String> getDependents(Path module) {
+    return Set.copyOf(dependents.getOrDefault(module.toAbsolutePath().normalize(), Set.of()));
+  }
+
+  /**
+   * Whether a module was deleted or its content changed since it was last seen
+   */
+  public Boolean hasChanged(Path module) {
+    module = module.toAbsolutePath().normalize();
+
+    String previousHash = hashes.get(module);
+
+    if (previousHash == null)
+      return false;
+
+    try {
+      String hash = ScriptHash.of(module.toFile());
+      hashes.put(module, hash);
+
+      return !hash.equals(previousHash);
+    } catch (IOException e) {
+      return true;
+    }
+  }
+}
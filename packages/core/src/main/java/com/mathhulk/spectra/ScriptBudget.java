@@ -0,0 +1,257 @@
+package com.mathhulk.spectra;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.ResourceLimits;
+
+/**
+ * CPU time and statement budgets for the entry points of a script.
+ *
+ * Budgets are declared per script with <code>// @budget-event 5</code>,
+ * <code>// @budget-command 20</code>, <code>// @budget-task 10</code> (in
+ * milliseconds) and <code>// @statement-budget 100000</code>, falling back to
+ * the <code>spectra.budget.*</code> system properties. A budget of 0 is
+ * unlimited.
+ */
+public class ScriptBudget {
+  // Interrupts invocations which run past their time budget
+  private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+    Thread thread = new Thread(runnable, "Spectra Script Watchdog");
+    thread.setDaemon(true);
+
+    return thread;
+  });
+
+  private static final int RUNNING = 0;
+  private static final int FINISHED = 1;
+  private static final int INTERRUPTING = 2;
+
+  private final String name;
+  private final Logger logger;
+
+  private final Map<EntryPoint, Long> timeBudgets = new EnumMap<>(EntryPoint.class);
+  private final long statementBudget;
+
+  private final Map<EntryPoint, AtomicLong> offenses = new EnumMap<>(EntryPoint.class);
+
+  private Context context;
+
+  // Calls into a context never overlap, so the depth is only read by the calling thread
+  private int depth;
+
+  private Runnable recovery;
+  private Boolean recovering = false;
+
+  public ScriptBudget(String name, ScriptHeader header, Logger logger) {
+    this.name = name;
+    this.logger = logger;
+
+    for (EntryPoint entryPoint : EntryPoint.values()) {
+      long defaultBudget = Long.getLong("spectra.budget." + entryPoint.getName(), 0L);
+
+      timeBudgets.put(entryPoint, header.getLong("budget-" + entryPoint.getName(), defaultBudget));
+      offenses.put(entryPoint, new AtomicLong());
+    }
+
+    statementBudget = header.getLong("statement-budget", Long.getLong("spectra.budget.statements", 0L));
+  }
+
+  public long getTimeBudget(EntryPoint entryPoint) {
+    return timeBudgets.get(entryPoint);
+  }
+
+  public long getStatementBudget() {
+    return statementBudget;
+  }
+
+  public long getOffenses(EntryPoint entryPoint) {
+    return offenses.get(entryPoint).get();
+  }
+
+  /**
+   * Statement limits are configured per engine, so scripts with a statement
+   * budget cannot use the shared engine
+   */
+  public Boolean requiresIsolatedEngine() {
+    return statementBudget > 0;
+  }
+
+  public void configure(Context.Builder builder) {
+    if (statementBudget > 0)
+      builder.resourceLimits(ResourceLimits.newBuilder().statementLimit(statementBudget, null).build());
+  }
+
+  public void attach(Context context) {
+    this.context = context;
+
+    recovering = false;
+  }
+
+  /**
+   * Sets what replaces the context once the statement limit has cancelled it,
+   * which runs at most once per attached context
+   */
+  public void setRecovery(Runnable recovery) {
+    this.recovery = recovery;
+  }
+
+  /**
+   * Resets the statement count, so statements of an earlier evaluation do not
+   * count against the next call
+   */
+  public void resetLimits() {
+    if (statementBudget > 0 && context != null)
+      context.resetLimits();
+  }
+
+  public void run(EntryPoint entryPoint, Runnable runnable) {
+    call(entryPoint, () -> {
+      runnable.run();
+
+      return null;
+    }, null);
+  }
+
+  /**
+   * Calls into the script, aborting the invocation when it exceeds its budget
+   * and returning the fallback instead.
+   *
+   * Calls made from within another call, such as an event fired by a command,
+   * run within the budget of the outermost call.
+   */
+  public <T> T call(EntryPoint entryPoint, Supplier<T> supplier, T fallback) {
+    long timeBudget = timeBudgets.get(entryPoint);
+
+    if (depth > 0 || (timeBudget <= 0 && statementBudget <= 0)) {
+      depth++;
+
+      try {
+        return supplier.get();
+      } finally {
+        depth--;
+      }
+    }
+
+    resetLimits();
+
+    Invocation invocation = timeBudget > 0 ? new Invocation(timeBudget) : null;
+
+    depth++;
+
+    try {
+      return supplier.get();
+    } catch (PolyglotException e) {
+      if (e.isInterrupted() && invocation != null && invocation.isInterrupted()) {
+        offenses.get(entryPoint).incrementAndGet();
+
+        logger.warning("Aborted " + entryPoint.getName() + " in script " + name
+            + " after exceeding its budget of " + timeBudget + "ms");
+
+        return fallback;
+      }
+
+      if (e.isResourceExhausted()) {
+        offenses.get(entryPoint).incrementAndGet();
+
+        logger.severe("Cancelled script " + name
+            + " after exceeding its budget of " + statementBudget + " statements");
+
+        // The statement limit cancels the context, so it is replaced
+        if (recovery != null && !recovering) {
+          recovering = true;
+
+          recovery.run();
+        }
+
+        return fallback;
+      }
+
+      throw e;
+    } finally {
+      depth--;
+
+      if (invocation != null)
+        invocation.finish();
+    }
+  }
+
+  /**
+   * The watch of a single call. The interrupt and the end of the call race
+   * for its state, and a call which ends while it is being interrupted waits
+   * for the interrupt to finish, so the interrupt cannot hit the next call.
+   */
+  private class Invocation {
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+    private final ScheduledFuture<?> timeout;
+
+    // The context the call runs in, even if the script is reloaded meanwhile
+    private final Context target = context;
+
+    private Invocation(long timeBudget) {
+      // Waiting for the interrupt would hold up the watchdogs of other scripts
+      timeout = WATCHDOG.schedule(() -> Thread.ofVirtual().name("Spectra Script Interrupt: " + name)
+          .start(() -> interrupt(timeBudget)), timeBudget, TimeUnit.MILLISECONDS);
+    }
+
+    private void interrupt(long timeBudget) {
+      if (!state.compareAndSet(RUNNING, INTERRUPTING))
+        return;
+
+      try {
+        target.interrupt(Duration.ofMillis(timeBudget));
+      } catch (Exception e) {
+        logger.warning("Failed to interrupt script: " + name);
+      } finally {
+        interrupted.countDown();
+      }
+    }
+
+    private Boolean isInterrupted() {
+      return state.get() == INTERRUPTING;
+    }
+
+    private void finish() {
+      timeout.cancel(false);
+
+      if (state.compareAndSet(RUNNING, FINISHED))
+        return;
+
+      try {
+        interrupted.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public String describe() {
+    StringBuilder builder = new StringBuilder();
+
+    for (EntryPoint entryPoint : EntryPoint.values()) {
+      long timeBudget = timeBudgets.get(entryPoint);
+
+      builder.append(entryPoint.getName())
+          .append(" ")
+          .append(timeBudget > 0 ? timeBudget + "ms" : "unlimited")
+          .append(" (")
+          .append(getOffenses(entryPoint))
+          .append(" offenses), ");
+    }
+
+    return builder.append("statements ").append(statementBudget > 0 ? statementBudget : "unlimited").toString();
+  }
+}
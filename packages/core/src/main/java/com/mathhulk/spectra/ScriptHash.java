@@ -0,0 +1,26 @@
+package com.mathhulk.spectra;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Hashes the content of scripts and modules, so saves which do not change a
+ * file can be told apart from real changes
+ */
+public class ScriptHash {
+  public static String of(byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("Failed to hash script", e);
+    }
+  }
+
+  public static String of(File file) throws IOException {
+    return of(Files.readAllBytes(file.toPath()));
+  }
+}
@@ -0,0 +1,96 @@
+package com.mathhulk.spectra;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Directives declared in the leading comment block of a script, e.g.
+ * <code>// @engine isolated</code>
+ */
+public class ScriptHeader {
+  private static final String DIRECTIVE_PREFIX = "@";
+
+  private final Map<String, List<String>> directives;
+
+  private ScriptHeader(Map<String, List<String>> directives) {
+    this.directives = directives;
+  }
+
+  /**
+   * Reads the header without evaluating the script
+   */
+  public static ScriptHeader read(File file) {
+    Map<String, List<String>> directives = new HashMap<>();
+
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+
+        if (line.isEmpty() || line.startsWith("#!"))
+          continue;
+
+        if (!line.startsWith("//"))
+          break;
+
+        String comment = line.substring(2).trim();
+
+        if (!comment.startsWith(DIRECTIVE_PREFIX))
+          continue;
+
+        int separator = comment.indexOf(' ');
+
+        String key = separator == -1 ? comment.substring(1) : comment.substring(1, separator);
+        String value = separator == -1 ? "" : comment.substring(separator + 1).trim();
+
+        directives.computeIfAbsent(key, (_) -> new ArrayList<>()).add(value);
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+
+    return new ScriptHeader(directives);
+  }
+
+  public Boolean has(String key) {
+    return directives.containsKey(key);
+  }
+
+  public String get(String key) {
+    List<String> values = directives.get(key);
+
+    if (values == null || values.isEmpty())
+      return null;
+
+    return values.getFirst();
+  }
+
+  public String get(String key, String defaultValue) {
+    String value = get(key);
+
+    return value == null ? defaultValue : value;
+  }
+
+  public List<String> getAll(String key) {
+    return directives.getOrDefault(key, List.of());
+  }
+
+  public long getLong(String key, long defaultValue) {
+    String value = get(key);
+
+    if (value == null)
+      return defaultValue;
+
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+}
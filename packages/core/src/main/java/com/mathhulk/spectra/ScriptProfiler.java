@@ -0,0 +1,107 @@
+package com.mathhulk.spectra;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples the time spent in every script entry point while active. When
+ * inactive, the only cost is a volatile read per invocation.
+ */
+public final class ScriptProfiler {
+  private static final long NANOS_PER_TICK = 50_000_000L;
+
+  private static volatile Boolean active = false;
+
+  private static long startTime;
+  private static long stopTime;
+
+  private static final Map<Key, Sample> samples = new ConcurrentHashMap<>();
+
+  private record Key(String script, EntryPoint entryPoint, String label) {
+  }
+
+  private static class Sample {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+  }
+
+  private ScriptProfiler() {
+  }
+
+  public static Boolean isActive() {
+    return active;
+  }
+
+  public static synchronized Boolean start() {
+    if (active)
+      return false;
+
+    samples.clear();
+    startTime = System.nanoTime();
+    active = true;
+
+    return true;
+  }
+
+  public static synchronized Boolean stop() {
+    if (!active)
+      return false;
+
+    active = false;
+    stopTime = System.nanoTime();
+
+    return true;
+  }
+
+  public static void record(String script, EntryPoint entryPoint, String label, long nanos) {
+    Sample sample = samples.computeIfAbsent(new Key(script, entryPoint, label), (_) -> new Sample());
+
+    sample.count.increment();
+    sample.totalNanos.add(nanos);
+    sample.maxNanos.accumulate(nanos);
+  }
+
+  /**
+   * Gets the entry points with the most total time over the sampled window
+   */
+  public static synchronized List<String> report(int limit) {
+    long window = (active ? System.nanoTime() : stopTime) - startTime;
+
+    List<String> lines = new ArrayList<>();
+
+    if (startTime == 0) {
+      lines.add("No profile has been recorded");
+
+      return lines;
+    }
+
+    double ticks = Math.max(1, (double) window / NANOS_PER_TICK);
+
+    lines.add(String.format("Profiled %.1fs (%s), top %d entry points by total time:", window / 1e9,
+        active ? "running" : "stopped", limit));
+
+    samples.entrySet().stream()
+        .sorted(Comparator.comparingLong((Map.Entry<Key, Sample> entry) -> entry.getValue().totalNanos.sum())
+            .reversed())
+        .limit(limit)
+        .forEach((entry) -> {
+          Key key = entry.getKey();
+          Sample sample = entry.getValue();
+
+          long count = sample.count.sum();
+          long totalNanos = sample.totalNanos.sum();
+
+          lines.add(String.format("%s %s %s: %.2fms/tick, %d calls, avg %.1fus, max %.1fus", key.script(),
+              key.entryPoint().getName(), key.label(), totalNanos / 1e6 / ticks, count,
+              totalNanos / 1e3 / Math.max(1, count), sample.maxNanos.get() / 1e3));
+        });
+
+    return lines;
+  }
+}
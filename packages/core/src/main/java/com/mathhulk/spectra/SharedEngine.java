@@ -0,0 +1,93 @@
+package com.mathhulk.spectra;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+import org.graalvm.polyglot.Engine;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Process-wide engine shared by every script context, so parsed sources and
+ * compiled code are reused across scripts and reloads
+ */
+public final class SharedEngine {
+  private static final String INTERPRETED_RUNTIME = "Interpreted";
+
+  private static Engine engine;
+
+  private SharedEngine() {
+  }
+
+  public static synchronized Engine getEngine() {
+    if (engine == null) {
+      // The interpreter-only warning is replaced by logRuntime()
+      engine = Engine.newBuilder()
+          .option("engine.WarnInterpreterOnly", "false")
+          .build();
+    }
+
+    return engine;
+  }
+
+  public static synchronized Boolean isCreated() {
+    return engine != null;
+  }
+
+  /**
+   * Whether guest code is compiled by the optimizing Truffle runtime
+   */
+  public static Boolean isOptimizing() {
+    return !getEngine().getImplementationName().equals(INTERPRETED_RUNTIME);
+  }
+
+  /**
+   * Whether the JVM was started with JVMCI enabled
+   */
+  public static Boolean isJVMCIEnabled() {
+    try {
+      HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+
+      return Boolean.parseBoolean(bean.getVMOption("EnableJVMCI").getValue());
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  public static String describe() {
+    Engine engine = getEngine();
+
+    return engine.getImplementationName() + " " + engine.getVersion()
+        + (isOptimizing() ? " (optimizing)" : " (interpreter only)")
+        + ", JVMCI " + (isJVMCIEnabled() ? "enabled" : "disabled");
+  }
+
+  /**
+   * Logs the runtime, warning loudly when scripts will not be compiled
+   */
+  public static void logRuntime(Logger logger) {
+    if (isOptimizing()) {
+      logger.info("Scripts are running on " + describe());
+
+      return;
+    }
+
+    logger.warning("Scripts are running WITHOUT a JIT compiler: " + describe());
+
+    if (isJVMCIEnabled()) {
+      logger.warning("JVMCI is enabled but no Graal compiler was found, add the org.graalvm.compiler:compiler jar"
+          + " with --upgrade-module-path or run on a GraalVM JDK");
+    } else {
+      logger.warning("Start the server with -XX:+UnlockExperimentalVMOptions -XX:+EnableJVMCI and the"
+          + " org.graalvm.compiler:compiler jar on --upgrade-module-path, or run on a GraalVM JDK");
+    }
+  }
+
+  public static synchronized void close() {
+    if (engine == null)
+      return;
+
+    engine.close();
+    engine = null;
+  }
+}